@@ -19,6 +19,21 @@ public abstract class EEASettings {
     public final static int CACHE_DURATION_IN_SECONDS = 10;
     public final static int QUERY_TIMEOUT_IN_MILLISECONDS = 20*60*1000;
     public final static int MAX_CONCURRENT_HARVESTS = 6;
+    public final static int SPARQL_MAX_CONNECTIONS = 50;
+    public final static int SPARQL_MAX_CONNECTIONS_PER_ENDPOINT = 10;
+    public final static int SPARQL_IDLE_CONNECTION_SECONDS = 60;
+    public final static int SPARQL_CONNECTION_WAIT_SECONDS = 10 * 60;
+    public final static int SPARQL_RETRIES = 5;
+    public final static long SPARQL_BACKOFF_MILLIS = 1000;
+    public final static long SPARQL_MAX_BACKOFF_MILLIS = 60 * 1000;
+    public final static int CIRCUIT_WINDOW = 20;
+    public final static int CIRCUIT_MIN_CALLS = 10;
+    public final static int CIRCUIT_ERROR_RATE_PERCENT = 50;
+    public final static int CIRCUIT_CONSECUTIVE_FAILURES = 5;
+    public final static long CIRCUIT_OPEN_MILLIS = 30 * 1000;
+    public final static long CIRCUIT_MAX_OPEN_MILLIS = 10 * 60 * 1000;
+    public final static long CIRCUIT_PROBE_TIMEOUT_MILLIS = 10 * 1000;
+    public final static int FORMAT_PROBE_TIMEOUT_MILLIS = 30 * 1000;
     public final static String LOG_LEVEL = "info";
 
     public final static String DEFAULT_INDEX_NAME = "rdfdata";
@@ -52,14 +67,95 @@ public abstract class EEASettings {
     public final static String DEFAULT_SYNC_TIME_PROP =
             "http://cr.eionet.europa.eu/ontologies/contreg.rdf#lastRefreshed";
     public final static Boolean DEFAULT_SYNC_OLD_DATA = false;
+    public final static Boolean DEFAULT_STREAMING = false;
+    public final static int DEFAULT_STREAMING_WINDOW = 1000;
+    public final static Boolean DEFAULT_SELECT_ORDERED_BY_SUBJECT = false;
+    public final static int DEFAULT_MAX_CONNECTIONS = 0;
+    public final static long DEFAULT_MAX_IN_MEMORY_TRIPLES = 0;
+    public final static Boolean DEFAULT_SKIP_UNCHANGED = true;
+    public final static String DEFAULT_CONSTRUCT_FORMAT = "";
+    public final static String DEFAULT_SELECT_FORMAT = "";
+    public final static int DEFAULT_PAGE_SIZE = 0;
+    public final static int DEFAULT_PAGE_PREFETCH = 1;
+    public final static int DEFAULT_QUERY_PARALLELISM = 1;
+    public final static int DEFAULT_PARTITIONS = 1;
+    public final static int DEFAULT_INDEXING_PARALLELISM = 1;
+    public final static int DEFAULT_BULK_CONCURRENT_REQUESTS = 4;
+    public final static int DEFAULT_BULK_ACTIONS = 1000;
+    public final static long DEFAULT_BULK_MAX_BYTES = 5 * 1024 * 1024;
+    public final static Boolean DEFAULT_BULK_ADAPTIVE = true;
+    public final static long DEFAULT_BULK_TARGET_LATENCY = 2000;
+    public final static int DEFAULT_BULK_MAX_RETRIES = 8;
+    public final static long DEFAULT_BULK_RETRY_DELAY = 100;
+    public final static Boolean DEFAULT_OPTIMIZE_INDEX_BUILD = true;
+    public final static Boolean DEFAULT_EXPLICIT_MAPPING = false;
+    public final static String DEFAULT_DYNAMIC_MAPPING = "true";
+    public final static String DEFAULT_STRING_TYPE = "text_keyword";
+    /* Time given to the primaries of the built index to get active before it is moved */
+    public final static long INDEX_ACTIVE_TIMEOUT_SECONDS = 60;
+    /* Smallest bulk and growth step of the adaptive bulk size */
+    public final static int BULK_MIN_ACTIONS = 50;
+    public final static int DEFAULT_MAX_VALUES_PER_FIELD = 0;
+    public final static Boolean DEFAULT_COMPACT_FIELD_NAMES = false;
+    public final static String LANGUAGE_MODE_SPLIT = "split";
+    public final static String LANGUAGE_MODE_NESTED = "nested";
+    public final static String DEFAULT_LANGUAGE_MODE = LANGUAGE_MODE_SPLIT;
+    /* Subjects handed at once to the threads building the documents */
+    public final static int INDEXING_CHUNK_SIZE = 1000;
 
+    /**
+     * Sanitizes a literal in a single pass over its characters. The text is
+     * trimmed, line breaks become spaces, double quotes become single quotes,
+     * tabs become four spaces, backslashes before quotes are dropped,
+     * "\\xHH" escapes become "_" and the other backslashes are doubled.
+     *
+     * @param text the lexical form of a literal
+     * @return the sanitized text
+     */
     public static String parseForJson(String text) {
-        return text.trim().replaceAll("[\n\r]", " ")
-                .replace('\"', '\'')
-                .replace("\t", "    ")
-                .replace("\\'", "\'")
-                .replaceAll("\\\\x[a-fA-F0-9][a-fA-F0-9]", "_")
-                .replace("\\", "\\\\");
+        String trimmed = text.trim();
+        int length = trimmed.length();
+        StringBuilder sb = null;
+        for (int i = 0; i < length; i++) {
+            char c = trimmed.charAt(i);
+            if (c != '\n' && c != '\r' && c != '"' && c != '\t' && c != '\\') {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length + 16);
+                sb.append(trimmed, 0, i);
+            }
+            switch (c) {
+                case '\n':
+                case '\r':
+                    sb.append(' ');
+                    break;
+                case '"':
+                    sb.append('\'');
+                    break;
+                case '\t':
+                    sb.append("    ");
+                    break;
+                default:
+                    char next = i + 1 < length ? trimmed.charAt(i + 1) : 0;
+                    if (next == '\'' || next == '"') {
+                        sb.append('\'');
+                        i++;
+                    } else if (next == 'x' && i + 3 < length
+                            && isHexDigit(trimmed.charAt(i + 2)) && isHexDigit(trimmed.charAt(i + 3))) {
+                        sb.append('_');
+                        i += 3;
+                    } else {
+                        sb.append("\\\\");
+                    }
+            }
+        }
+        return sb == null ? trimmed : sb.toString();
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
     }
 
     public static String removeIllegalXMLChar(String text) {
@@ -7,11 +7,14 @@ import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.sparql.ARQException;
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
 import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.jena.atlas.web.TypedInputStream;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.action.ActionListener;
@@ -21,6 +24,7 @@ import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest
 import org.elasticsearch.action.admin.indices.shrink.ResizeRequest;
 import org.elasticsearch.action.admin.indices.shrink.ResizeResponse;
 import org.elasticsearch.action.admin.indices.shrink.ResizeType;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -40,10 +44,25 @@ import org.elasticsearch.app.api.server.entities.UpdateStates;
 import org.elasticsearch.app.api.server.exceptions.CouldNotCloneIndex;
 import org.elasticsearch.app.api.server.exceptions.CouldNotSearchForIndex;
 import org.elasticsearch.app.api.server.exceptions.CouldNotSetSettingsOfIndex;
+import org.elasticsearch.app.api.server.exceptions.EndpointUnavailable;
 import org.elasticsearch.app.api.server.scheduler.RunningHarvester;
 import org.elasticsearch.app.logging.ESLogger;
 import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.app.support.BulkIndexer;
+import org.elasticsearch.app.support.BulkSizeController;
+import org.elasticsearch.app.support.IndexBuildProfile;
+import org.elasticsearch.app.support.IndexMapping;
+import org.elasticsearch.app.support.ContentFingerprint;
+import org.elasticsearch.app.support.EndpointGuard;
 import org.elasticsearch.app.support.ESNormalizer;
+import org.elasticsearch.app.support.LabelIndex;
+import org.elasticsearch.app.support.NormalizationPlan;
+import org.elasticsearch.app.support.PrefixRegistry;
+import org.elasticsearch.app.support.QueryRewriter;
+import org.elasticsearch.app.support.ResultFormats;
+import org.elasticsearch.app.support.SparqlHttpClient;
+import org.elasticsearch.app.support.SpillableModel;
+import org.elasticsearch.app.support.SubjectGroupingStream;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.settings.Settings;
@@ -55,13 +74,26 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.IDN;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
@@ -114,6 +146,59 @@ public class Harvester implements Runnable, RunningHarvester {
     private List<String> rdfQueries = new ArrayList<String>();
     private QueryType rdfQueryType;
 
+    /* Streaming options */
+    private Boolean streaming = false;
+    private int streamingWindow = EEASettings.DEFAULT_STREAMING_WINDOW;
+    private Boolean selectOrderedBySubject = EEASettings.DEFAULT_SELECT_ORDERED_BY_SUBJECT;
+
+    /* Maximum number of connections to the endpoint, 0 for the default */
+    private int maxConnections = EEASettings.DEFAULT_MAX_CONNECTIONS;
+
+    /* Number of harvested triples kept in memory before moving them to disk, 0 to never */
+    private long maxInMemoryTriples = EEASettings.DEFAULT_MAX_IN_MEMORY_TRIPLES;
+
+    /* Skip the index swap when the harvested data did not change */
+    private Boolean skipUnchanged = EEASettings.DEFAULT_SKIP_UNCHANGED;
+    private ContentFingerprint fingerprint = new ContentFingerprint("");
+    private String previousFingerprint;
+    private boolean unchanged = false;
+
+    /* Result format options */
+    private String constructFormat = EEASettings.DEFAULT_CONSTRUCT_FORMAT;
+    private String selectFormat = EEASettings.DEFAULT_SELECT_FORMAT;
+    private ResultFormats resultFormats = new ResultFormats(constructFormat, selectFormat);
+
+    /* Paging options */
+    private int pageSize = EEASettings.DEFAULT_PAGE_SIZE;
+    private int pagePrefetch = EEASettings.DEFAULT_PAGE_PREFETCH;
+
+    /* Parallelism options */
+    private int queryParallelism = EEASettings.DEFAULT_QUERY_PARALLELISM;
+    private int partitions = EEASettings.DEFAULT_PARTITIONS;
+    private int indexingParallelism = EEASettings.DEFAULT_INDEXING_PARALLELISM;
+    private int bulkConcurrentRequests = EEASettings.DEFAULT_BULK_CONCURRENT_REQUESTS;
+
+    /* Bulk sizing options */
+    private int bulkActions = EEASettings.DEFAULT_BULK_ACTIONS;
+    private long bulkMaxBytes = EEASettings.DEFAULT_BULK_MAX_BYTES;
+    private Boolean bulkAdaptive = EEASettings.DEFAULT_BULK_ADAPTIVE;
+    private long bulkTargetLatency = EEASettings.DEFAULT_BULK_TARGET_LATENCY;
+    private int bulkMaxRetries = EEASettings.DEFAULT_BULK_MAX_RETRIES;
+    private long bulkRetryDelay = EEASettings.DEFAULT_BULK_RETRY_DELAY;
+
+    /* Temporary index options */
+    private Boolean optimizeIndexBuild = EEASettings.DEFAULT_OPTIMIZE_INDEX_BUILD;
+    private IndexBuildProfile buildProfile;
+    /* Set while the production index is deleted and not yet replaced */
+    private boolean productionIndexDeleted = false;
+
+    /* Mapping options */
+    private Boolean explicitMapping = EEASettings.DEFAULT_EXPLICIT_MAPPING;
+    private Map<String, Object> fieldTypes = new HashMap<>();
+    private String dynamicMapping = EEASettings.DEFAULT_DYNAMIC_MAPPING;
+    private String defaultStringType = EEASettings.DEFAULT_STRING_TYPE;
+    private IndexMapping indexMapping;
+
     /* WhiteList / BlackList properties */
     private List<String> rdfPropList = new ArrayList<String>();
     private Boolean isWhitePropList = false;
@@ -122,6 +207,11 @@ public class Harvester implements Runnable, RunningHarvester {
     private Map<String, Object> normalizeProp = new HashMap<String, Object>();
     private Map<String, String> normalizeObj = new HashMap<String, String>();
     private Map<String, Object> normalizeMissing = new HashMap<String, Object>();
+    private int maxValuesPerField = EEASettings.DEFAULT_MAX_VALUES_PER_FIELD;
+    private String languageMode = EEASettings.DEFAULT_LANGUAGE_MODE;
+    private PrefixRegistry prefixRegistry = PrefixRegistry.none();
+    /* Label rules by property, null for the default ones */
+    private Map<String, NormalizationPlan.LabelRule> labelRules;
 
     /* Language options */
     private Boolean addLanguage = false;
@@ -138,6 +228,9 @@ public class Harvester implements Runnable, RunningHarvester {
     private Map<String, Set<String>> blackMap = new HashMap<String, Set<String>>();
     private Map<String, Set<String>> whiteMap = new HashMap<String, Set<String>>();
 
+    /* Normalization options compiled for the current harvest */
+    private NormalizationPlan normalizationPlan;
+
     /* Sync options */
     private String syncConditions;
     private String syncTimeProp;
@@ -175,9 +268,9 @@ public class Harvester implements Runnable, RunningHarvester {
         this.indexer = indexer;
     }
 
-    private HashMap<String, String> uriLabelCache = new HashMap<>();
+    private final ConcurrentHashMap<String, String> uriLabelCache = new ConcurrentHashMap<>();
 
-    public HashMap<String, String> getUriLabelCache() {
+    public Map<String, String> getUriLabelCache() {
         return this.uriLabelCache;
     }
 
@@ -270,6 +363,490 @@ public class Harvester implements Runnable, RunningHarvester {
         return this;
     }
 
+    /**
+     * Sets the {@link Harvester}'s {@link #streaming} parameter. When set to
+     * true, the results of a river with a single query grouped by subject are
+     * not collected into one model, see {@link #canStream()}. The triples are
+     * read as a stream, grouped by subject and every subject is indexed as
+     * soon as it is complete.
+     *
+     * @param streaming - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #streaming}
+     * parameter set
+     */
+    public Harvester rdfStreaming(Boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #streamingWindow} parameter. It is
+     * the number of subjects kept open while streaming. A subject is
+     * indexed once it is pushed out of the window. When the triples of a
+     * subject arrive after it was indexed, the results are harvested whole.
+     *
+     * @param streamingWindow - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #streamingWindow}
+     * parameter set
+     */
+    public Harvester rdfStreamingWindow(int streamingWindow) {
+        if (streamingWindow > 0) {
+            this.streamingWindow = streamingWindow;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #selectOrderedBySubject} parameter.
+     * When set to true, SELECT queries are ordered by ?s and the solutions
+     * are grouped by comparing consecutive subjects, so only one subject is
+     * held in memory. SELECT rivers are then streamed when they can be, see
+     * {@link #canStream()}.
+     *
+     * @param selectOrderedBySubject - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #selectOrderedBySubject}
+     * parameter set
+     */
+    public Harvester rdfSelectOrderedBySubject(Boolean selectOrderedBySubject) {
+        this.selectOrderedBySubject = selectOrderedBySubject;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #maxConnections} parameter. It is
+     * the maximum number of connections open to the {@link #rdfEndpoint} at
+     * once, shared by all the rivers harvesting the same endpoint.
+     *
+     * @param maxConnections - a new value for the parameter, 0 keeps the
+     *                       default of the connection pool
+     * @return the same {@link Harvester} with the {@link #maxConnections}
+     * parameter set
+     */
+    public Harvester rdfMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(0, maxConnections);
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #maxInMemoryTriples} parameter.
+     * When the results of the queries exceed this many triples, they are
+     * moved to a temporary store on disk and indexed from there.
+     *
+     * @param maxInMemoryTriples - a new value for the parameter, 0 keeps
+     *                           the results in memory
+     * @return the same {@link Harvester} with the {@link #maxInMemoryTriples}
+     * parameter set
+     */
+    public Harvester rdfMaxInMemoryTriples(long maxInMemoryTriples) {
+        this.maxInMemoryTriples = Math.max(0, maxInMemoryTriples);
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #skipUnchanged} parameter. When set
+     * to true, a full harvest whose data has the same fingerprint as the last
+     * successful harvest keeps the current index instead of replacing it.
+     * Streamed harvests index the data while they fingerprint it, for them
+     * only the swap of the index is saved.
+     *
+     * @param skipUnchanged - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #skipUnchanged}
+     * parameter set
+     */
+    public Harvester rdfSkipUnchanged(Boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #constructFormat} parameter. It is
+     * the format requested for the results of CONSTRUCT and DESCRIBE queries:
+     * thrift, ntriples, turtle, rdfxml, jsonld, a MIME type or "auto". When
+     * empty, the format is negotiated by Jena.
+     *
+     * @param constructFormat - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #constructFormat}
+     * parameter set
+     */
+    public Harvester rdfConstructFormat(String constructFormat) {
+        try {
+            resultFormats = new ResultFormats(constructFormat, selectFormat);
+            this.constructFormat = constructFormat;
+        } catch (IllegalArgumentException e) {
+            logger.error("{}. Using the default constructFormat", e.getMessage());
+            this.constructFormat = EEASettings.DEFAULT_CONSTRUCT_FORMAT;
+            resultFormats = new ResultFormats(this.constructFormat, selectFormat);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #selectFormat} parameter. It is
+     * the format requested for the results of SELECT queries: tsv, json, xml,
+     * csv, a MIME type or "auto". When empty, the format is negotiated by Jena.
+     *
+     * @param selectFormat - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #selectFormat}
+     * parameter set
+     */
+    public Harvester rdfSelectFormat(String selectFormat) {
+        try {
+            resultFormats = new ResultFormats(constructFormat, selectFormat);
+            this.selectFormat = selectFormat;
+        } catch (IllegalArgumentException e) {
+            logger.error("{}. Using the default selectFormat", e.getMessage());
+            this.selectFormat = EEASettings.DEFAULT_SELECT_FORMAT;
+            resultFormats = new ResultFormats(constructFormat, this.selectFormat);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #pageSize} parameter. When it is
+     * greater than 0, each query is executed in pages of pageSize solutions
+     * ordered by subject and every page is indexed as soon as it arrives.
+     *
+     * @param pageSize - a new value for the parameter, 0 disables paging
+     * @return the same {@link Harvester} with the {@link #pageSize}
+     * parameter set
+     */
+    public Harvester rdfPageSize(int pageSize) {
+        this.pageSize = Math.max(0, pageSize);
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #pagePrefetch} parameter. It is
+     * the number of pages requested from the endpoint ahead of the page
+     * being indexed.
+     *
+     * @param pagePrefetch - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #pagePrefetch}
+     * parameter set
+     */
+    public Harvester rdfPagePrefetch(int pagePrefetch) {
+        if (pagePrefetch > 0) {
+            this.pagePrefetch = pagePrefetch;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #queryParallelism} parameter. It is
+     * the number of {@link #rdfQueries} executed against the endpoint at once.
+     *
+     * @param queryParallelism - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #queryParallelism}
+     * parameter set
+     */
+    public Harvester rdfQueryParallelism(int queryParallelism) {
+        if (queryParallelism > 0) {
+            this.queryParallelism = queryParallelism;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #partitions} parameter. Each query
+     * is split into this many queries over disjoint sets of subjects, which
+     * are executed at once.
+     *
+     * @param partitions - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #partitions}
+     * parameter set
+     */
+    public Harvester rdfPartitions(int partitions) {
+        if (partitions > 0) {
+            this.partitions = Math.min(partitions, QueryRewriter.PARTITION_BUCKETS);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #indexingParallelism} parameter. It
+     * is the number of threads building the documents of a harvested model.
+     *
+     * @param indexingParallelism - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #indexingParallelism}
+     * parameter set
+     */
+    public Harvester rdfIndexingParallelism(int indexingParallelism) {
+        if (indexingParallelism > 0) {
+            this.indexingParallelism = indexingParallelism;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkConcurrentRequests} parameter.
+     * It is the maximum number of bulk requests sent to ES at once while the
+     * documents are being built.
+     *
+     * @param bulkConcurrentRequests - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkConcurrentRequests}
+     * parameter set
+     */
+    public Harvester rdfBulkConcurrentRequests(int bulkConcurrentRequests) {
+        if (bulkConcurrentRequests > 0) {
+            this.bulkConcurrentRequests = bulkConcurrentRequests;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkActions} parameter. It is the
+     * maximum number of documents sent to ES in a bulk.
+     *
+     * @param bulkActions - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkActions}
+     * parameter set
+     */
+    public Harvester rdfBulkActions(int bulkActions) {
+        if (bulkActions > 0) {
+            this.bulkActions = bulkActions;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkMaxBytes} parameter. It is the
+     * maximum payload of a bulk in bytes, 0 for no limit.
+     *
+     * @param bulkMaxBytes - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkMaxBytes}
+     * parameter set
+     */
+    public Harvester rdfBulkMaxBytes(long bulkMaxBytes) {
+        if (bulkMaxBytes >= 0) {
+            this.bulkMaxBytes = bulkMaxBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkAdaptive} parameter. When set,
+     * the number of documents per bulk is tuned from the latency and the
+     * rejections of the bulks, up to {@link #bulkActions}.
+     *
+     * @param bulkAdaptive - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkAdaptive}
+     * parameter set
+     */
+    public Harvester rdfBulkAdaptive(Boolean bulkAdaptive) {
+        this.bulkAdaptive = bulkAdaptive;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkTargetLatency} parameter. It
+     * is the bulk latency in milliseconds above which adaptive bulks shrink.
+     *
+     * @param bulkTargetLatency - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkTargetLatency}
+     * parameter set
+     */
+    public Harvester rdfBulkTargetLatency(long bulkTargetLatency) {
+        if (bulkTargetLatency > 0) {
+            this.bulkTargetLatency = bulkTargetLatency;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkMaxRetries} parameter. It is
+     * the number of times a request rejected because ES is overloaded is sent
+     * again before being given up, 0 for no retry.
+     *
+     * @param bulkMaxRetries - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkMaxRetries}
+     * parameter set
+     */
+    public Harvester rdfBulkMaxRetries(int bulkMaxRetries) {
+        if (bulkMaxRetries >= 0) {
+            this.bulkMaxRetries = bulkMaxRetries;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #bulkRetryDelay} parameter. It is
+     * the delay in milliseconds before the first retry of a rejected request,
+     * growing exponentially with the next retries.
+     *
+     * @param bulkRetryDelay - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #bulkRetryDelay}
+     * parameter set
+     */
+    public Harvester rdfBulkRetryDelay(long bulkRetryDelay) {
+        if (bulkRetryDelay > 0) {
+            this.bulkRetryDelay = bulkRetryDelay;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #optimizeIndexBuild} parameter. When
+     * set, the temporary index is built without refresh, replicas and
+     * synchronous translog, its settings being restored before it replaces
+     * the index.
+     *
+     * @param optimizeIndexBuild - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #optimizeIndexBuild}
+     * parameter set
+     */
+    public Harvester rdfOptimizeIndexBuild(Boolean optimizeIndexBuild) {
+        this.optimizeIndexBuild = optimizeIndexBuild;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #explicitMapping} parameter. When
+     * set, the mapping of the documents is generated from the normalization
+     * settings and installed before indexing.
+     *
+     * @param explicitMapping - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #explicitMapping}
+     * parameter set
+     */
+    public Harvester rdfExplicitMapping(Boolean explicitMapping) {
+        this.explicitMapping = explicitMapping;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #fieldTypes} parameter. It maps
+     * field names to an ES type, "text_keyword" or a field mapping.
+     *
+     * @param fieldTypes - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #fieldTypes}
+     * parameter set
+     */
+    public Harvester rdfFieldTypes(Map<String, Object> fieldTypes) {
+        if (fieldTypes != null) {
+            this.fieldTypes = fieldTypes;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #dynamicMapping} parameter. It is
+     * the ES "dynamic" policy of the fields missing from the mapping: "true",
+     * "false" or "strict".
+     *
+     * @param dynamicMapping - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #dynamicMapping}
+     * parameter set
+     */
+    public Harvester rdfDynamicMapping(String dynamicMapping) {
+        if (dynamicMapping.equals("true") || dynamicMapping.equals("false") || dynamicMapping.equals("strict")) {
+            this.dynamicMapping = dynamicMapping;
+        } else {
+            logger.warn("Unknown dynamicMapping [{}], using [{}]", dynamicMapping, this.dynamicMapping);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #defaultStringType} parameter. It
+     * is the type of the fields without a type in {@link #fieldTypes} and of
+     * the strings of the fields added dynamically.
+     *
+     * @param defaultStringType - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #defaultStringType}
+     * parameter set
+     */
+    public Harvester rdfDefaultStringType(String defaultStringType) {
+        if (!defaultStringType.isEmpty()) {
+            this.defaultStringType = defaultStringType;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #maxValuesPerField} parameter. It
+     * is the maximum number of values indexed for a field of a document, 0
+     * for no limit.
+     *
+     * @param maxValuesPerField - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #maxValuesPerField}
+     * parameter set
+     */
+    public Harvester rdfMaxValuesPerField(int maxValuesPerField) {
+        if (maxValuesPerField >= 0) {
+            this.maxValuesPerField = maxValuesPerField;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #languageMode} parameter. In the
+     * "split" mode a resource with literals in several languages is indexed
+     * as one document per language, in the "nested" mode as a single document
+     * with the fields of each language under "translations".
+     *
+     * @param languageMode - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #languageMode}
+     * parameter set
+     */
+    public Harvester rdfLanguageMode(String languageMode) {
+        if (EEASettings.LANGUAGE_MODE_SPLIT.equals(languageMode)
+                || EEASettings.LANGUAGE_MODE_NESTED.equals(languageMode)) {
+            this.languageMode = languageMode;
+        } else {
+            logger.warn("Unknown languageMode [{}], using [{}]", languageMode, this.languageMode);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #prefixRegistry} parameter. The
+     * registry compacts the property IRIs used as field names.
+     *
+     * @param prefixRegistry - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #prefixRegistry}
+     * parameter set
+     */
+    public Harvester rdfPrefixRegistry(PrefixRegistry prefixRegistry) {
+        if (prefixRegistry != null) {
+            this.prefixRegistry = prefixRegistry;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the {@link Harvester}'s {@link #labelRules} parameter. A label
+     * rule replaces the IRI values of a property by the label the harvested
+     * model holds for them. Each property is mapped either to the IRI of the
+     * label property or to an object with the "labelProperty" and an optional
+     * "prefix" the replaced IRIs start with.
+     *
+     * @param labelRules - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #labelRules}
+     * parameter set
+     */
+    @SuppressWarnings("unchecked")
+    public Harvester rdfLabelRules(Map<String, Object> labelRules) {
+        if (labelRules != null) {
+            this.labelRules = new HashMap<>();
+            for (Map.Entry<String, Object> entry : labelRules.entrySet()) {
+                Object labelProperty = entry.getValue();
+                Object prefix = null;
+                if (entry.getValue() instanceof Map) {
+                    Map<String, Object> rule = (Map<String, Object>) entry.getValue();
+                    labelProperty = rule.get("labelProperty");
+                    prefix = rule.get("prefix");
+                }
+                if (labelProperty == null || labelProperty.toString().isEmpty()) {
+                    logger.warn("Label rule of [{}] has no labelProperty, ignoring it", entry.getKey());
+                    continue;
+                }
+                this.labelRules.put(entry.getKey(), new NormalizationPlan.LabelRule(
+                        prefix == null ? "" : prefix.toString(), labelProperty.toString()));
+            }
+        }
+        return this;
+    }
+
     /**
      * Sets the {@link Harvester}'s {@link #rdfPropList} parameter
      *
@@ -318,6 +895,15 @@ public class Harvester implements Runnable, RunningHarvester {
         return this;
     }
 
+    /**
+     * Sets the {@link Harvester}'s {@link #addCounting} parameter. When set
+     * on "true", every field of a document is accompanied by an
+     * "items_count_" field holding its number of values.
+     *
+     * @param rdfAddCounting - a new value for the parameter
+     * @return the same {@link Harvester} with the {@link #addCounting}
+     * parameter set
+     */
     public Harvester rdfAddCounting(Boolean rdfAddCounting) {
         addCounting = rdfAddCounting;
         return this;
@@ -667,6 +1253,18 @@ public class Harvester implements Runnable, RunningHarvester {
             return;
         }
 
+        int connectionDemand = getConnectionDemand();
+        if (!SparqlHttpClient.registerEndpoint(rdfEndpoint, connectionDemand, maxConnections)) {
+            logger.error("Harvesting {} stopped: raise maxConnections or lower queryParallelism, partitions"
+                    + " and pagePrefetch", riverName);
+            failed = true;
+            indexer.runningHarvestersPoolRemove(this);
+            return;
+        }
+        synchronized (this) {
+            normalizationPlan = null;
+        }
+
         if (checkRiverNotExists()) {
             SearchRequest searchRequest = new SearchRequest(indexer.getRiverIndex());
             SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
@@ -696,10 +1294,17 @@ public class Harvester implements Runnable, RunningHarvester {
 
                 deleteTempIndexIfExists();
 
+                if (indexAll && skipUnchanged && indexer.isUsingAPI() && Objects.nonNull(indexer.configManager)) {
+                    previousFingerprint = indexer.configManager.getLastSuccessfulFingerprint(indexName);
+                }
+
                 if (incrementally) {
                     copyCurrentIndexAsTempIndex();
                 }
 
+                applyIndexBuildProfile();
+                installIndexMapping();
+
                 setHarvestState(HarvestStates.HARVESTING_ENDPOINT);
                 if (indexAll && !synced)
                     success = runIndexAll();
@@ -708,9 +1313,16 @@ public class Harvester implements Runnable, RunningHarvester {
 
                 //TODO: async ?
                 if (success && !stopped) {
+                    if (unchanged) {
+                        discardIndexTemplates();
+                        deleteTempIndexIfExists();
+                    } else if (!renameIndex()) {
+                        // The fingerprint is only kept with a successful record
+                        failed = true;
+                        break;
+                    }
                     updateRecord.setFinishState(UpdateStates.SUCCESS);
                     setLastUpdate(new Date(startTime));
-                    renameIndex();
 
                     synced = true;
 
@@ -758,8 +1370,14 @@ public class Harvester implements Runnable, RunningHarvester {
 
         } catch (Exception e) {
             logger.error(e.getMessage());
+        } finally {
+            // The templates would apply to the next temporary index as well
+            discardIndexTemplates();
         }
 
+        SparqlHttpClient.unregisterEndpoint(rdfEndpoint, connectionDemand);
+        SparqlHttpClient.closeIdleConnections(EEASettings.SPARQL_IDLE_CONNECTION_SECONDS);
+
         if (stopped) {
             rollback();
             logger.warn("Stopped {} harvest", indexName);
@@ -809,24 +1427,95 @@ public class Harvester implements Runnable, RunningHarvester {
         }
     }
 
-    private void renameIndex() {
-        setHarvestState(HarvestStates.SWITCHING_TO_NEW_INDEX);
-        logger.info("Moving index from {} to {}", indexWithPrefix, indexName);
-        //Setting as cloneable
-        UpdateSettingsRequest settingsRequest = new UpdateSettingsRequest(indexWithPrefix);
+    /**
+     * Applies the {@link IndexBuildProfile} to the temporary index when
+     * {@link #optimizeIndexBuild} is set. The harvest goes on with the
+     * settings of the index if they cannot be applied.
+     */
+    private void applyIndexBuildProfile() {
+        buildProfile = null;
+        if (!optimizeIndexBuild) return;
+        IndexBuildProfile profile = new IndexBuildProfile(client, indexWithPrefix);
+        try {
+            profile.apply();
+            buildProfile = profile;
+        } catch (ElasticsearchException | IOException e) {
+            logger.error("Could not apply the build settings to index {}: {}", indexWithPrefix, e.getMessage());
+        }
+    }
+
+    /**
+     * Installs the {@link IndexMapping} generated from the normalization
+     * settings when {@link #explicitMapping} is set. The harvest goes on with
+     * a dynamic mapping if it cannot be installed.
+     */
+    private void installIndexMapping() {
+        indexMapping = null;
+        if (!explicitMapping) return;
+        IndexMapping mapping = new IndexMapping(client, indexWithPrefix, typeName);
+        try {
+            mapping.install(IndexMapping.build(getNormalizationPlan(), fieldTypes, defaultStringType,
+                    dynamicMapping));
+            indexMapping = mapping;
+        } catch (ElasticsearchException | IOException e) {
+            logger.error("Could not install the mapping of index {}: {}", indexWithPrefix, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the templates matching the temporary index, once it is built
+     * or given up.
+     */
+    private void discardIndexTemplates() {
+        if (buildProfile != null) {
+            buildProfile.discard();
+        }
+        if (indexMapping != null) {
+            indexMapping.discard();
+        }
+    }
+
+    /**
+     * Replaces the production index with the temporary index: restores the
+     * settings of the temporary index, deletes the production index and
+     * clones the temporary index under its name.
+     *
+     * @return false if the production index could not be replaced
+     */
+    private boolean renameIndex() {
+        setHarvestState(HarvestStates.SWITCHING_TO_NEW_INDEX);
+        logger.info("Moving index from {} to {}", indexWithPrefix, indexName);
+        if (indexMapping != null) {
+            indexMapping.discard();
+        }
+        //Restoring the settings changed for the build
+        if (buildProfile != null) {
+            try {
+                if (!buildProfile.restore(TimeValue.timeValueSeconds(EEASettings.INDEX_ACTIVE_TIMEOUT_SECONDS))) {
+                    logger.warn("Primaries of index {} are not active after {} seconds, moving it anyway",
+                            indexWithPrefix, EEASettings.INDEX_ACTIVE_TIMEOUT_SECONDS);
+                }
+            } catch (ElasticsearchException | IOException e) {
+                logger.error("Could not restore the settings of index " + indexWithPrefix, e);
+                return false;
+            }
+        }
+        //Setting as cloneable
+        UpdateSettingsRequest settingsRequest = new UpdateSettingsRequest(indexWithPrefix);
         Settings settings = Settings.builder().put("index.blocks.write", true).build();
         settingsRequest.settings(settings);
         try {
             client.indices().putSettings(settingsRequest, RequestOptions.DEFAULT);
         } catch (ElasticsearchException | IOException e) {
             logger.error("Could not set index.blocks.write=true on index " + indexWithPrefix, e);
-            return;
+            return false;
         }
 
         //Delete old index
         DeleteIndexRequest deleteRequest = new DeleteIndexRequest(indexName);
         try {
             client.indices().delete(deleteRequest, RequestOptions.DEFAULT);
+            productionIndexDeleted = true;
         } catch (IOException e) {
             logger.error("Could not delete index " + indexName, e);
         } catch (ElasticsearchException e) {
@@ -843,28 +1532,28 @@ public class Harvester implements Runnable, RunningHarvester {
                 logger.error("Cloning index {} to {} was not successful:\n\t\t\t\t\t\t\t\t\t\t\t\t\t" +
                                 "Acknowledged:{}\n\t\t\t\t\t\t\t\t\t\t\t\t\tShardsAcknowledged:{}"
                         , indexWithPrefix, indexName, clone.isAcknowledged(), clone.isShardsAcknowledged());
-                return;
+                return false;
             }
         } catch (ElasticsearchException | IOException e) {
             logger.error("Could not clone index {} to {}", indexWithPrefix, indexName, e);
-            return;
+            return false;
         }
+        productionIndexDeleted = false;
 
         //delete temp index
         deleteRequest = new DeleteIndexRequest(indexWithPrefix);
         try {
             client.indices().delete(deleteRequest, RequestOptions.DEFAULT);
         } catch (IOException e) {
+            // Deleted before the next harvest
             logger.error("Could not delete index " + indexWithPrefix, e);
-            return;
         } catch (ElasticsearchException e) {
             if (e.status() != RestStatus.NOT_FOUND) {
                 logger.error("Could not delete index " + indexWithPrefix, e);
-                return;
             }
         }
         logger.info("Moving index from {} to {} - Successful", indexWithPrefix, indexName);
-
+        return true;
     }
 
     public boolean runSync() {
@@ -911,11 +1600,10 @@ public class Harvester implements Runnable, RunningHarvester {
             return null;
         }
         //TODO: async?
-        QueryExecution qExec = QueryExecutionFactory.sparqlService(
-                rdfEndpoint, query);
+        List<QueryExecution> executions = new ArrayList<>();
 
         try {
-            ResultSet results = qExec.execSelect();
+            ResultSet results = openQuery(query, executions, QueryExecution::execSelect);
 
             while (results.hasNext()) {
                 QuerySolution sol = results.nextSolution();
@@ -937,7 +1625,9 @@ public class Harvester implements Runnable, RunningHarvester {
                     e.getLocalizedMessage());
             return null;
         } finally {
-            qExec.close();
+            for (QueryExecution qExec : executions) {
+                qExec.close();
+            }
         }
 
 
@@ -1215,12 +1905,14 @@ public class Harvester implements Runnable, RunningHarvester {
         Set<String> syncUris = executeSyncQuery(queryStr, "resource", rdfUrlssyncQueryCounter);
         if (stopped) return false;
         rdfUrlssyncQueryCounter++;
-        //TODO : if error retry
         if (syncUris == null) {
             logger.error("Errors occurred during sync procedure. Aborting!");
-            logger.info("sleep for 30secs");
+            // Wait until the endpoint is expected to answer again
+            long delay = Math.max(EndpointGuard.of(rdfEndpoint).retryDelayMillis(),
+                    EEASettings.SPARQL_BACKOFF_MILLIS);
+            logger.info("sleep for {} ms", delay);
             try {
-                TimeUnit.SECONDS.sleep(30);
+                TimeUnit.MILLISECONDS.sleep(delay);
             } catch (InterruptedException ex) {
                 logger.info("interrupted");
             }
@@ -1297,15 +1989,24 @@ public class Harvester implements Runnable, RunningHarvester {
                     Query query = QueryFactory.create(syncQuery);
 
                     long startTime = System.currentTimeMillis();
-                    QueryExecution qExec = QueryExecutionFactory.sparqlService(rdfEndpoint, query);
-
-                    qExec.setTimeout(-1);
 
                     try {
                         Model constructModel = ModelFactory.createDefaultModel();
 
                         try {
-                            qExec.execConstruct(constructModel);
+                            EndpointGuard.of(rdfEndpoint).call(() -> {
+                                QueryEngineHTTP qExec = SparqlHttpClient.configure(
+                                        QueryExecutionFactory.createServiceRequest(rdfEndpoint, query));
+                                resultFormats.configure(qExec, false);
+                                qExec.setTimeout(-1);
+                                try {
+                                    // Drop the triples of a failed attempt
+                                    constructModel.removeAll();
+                                    return qExec.execConstruct(constructModel);
+                                } finally {
+                                    qExec.close();
+                                }
+                            }, () -> stopped);
                         } catch (ARQException exc) {
                             logger.error("com.hp.hpl.jena.sparql.ARQException: [{}]", exc);
                             return false;
@@ -1321,8 +2022,6 @@ public class Harvester implements Runnable, RunningHarvester {
 
                         modelSyncQueryCounter++;
 
-                        BulkRequest bulkRequest = new BulkRequest();
-
                         /**
                          *  When adding the model to ES do not use toDescribeURIs
                          *  as the query already returned the correct labels.
@@ -1335,7 +2034,7 @@ public class Harvester implements Runnable, RunningHarvester {
                             return false;
                         }
 
-                        ArrayList<String> urisWithESErrors = addModelToES(constructModel, bulkRequest, false, modelCounter);
+                        ArrayList<String> urisWithESErrors = addModelToES(constructModel, false, modelCounter);
                         if (closed) return false;
 
                         count += bulk.size() - urisWithESErrors.size();
@@ -1388,8 +2087,6 @@ public class Harvester implements Runnable, RunningHarvester {
 
                         logger.error(e.getMessage());
 
-                    } finally {
-                        qExec.close();
                     }
                 } catch (QueryParseException qpe) {
 
@@ -1553,35 +2250,48 @@ public class Harvester implements Runnable, RunningHarvester {
         logger.info("Executing SELECT - done");
         while (results.hasNext()) {
             if (stopped) return null;
-            QuerySolution sol = results.next();
-            String subject;
-            String predicate;
-            RDFNode object;
-
-            try {
-                subject = sol.getResource("s").toString();
-                predicate = sol.getResource("p").toString();
-                object = sol.get("o");
-            } catch (NoSuchElementException e) {
-                logger.error("SELECT query does not return a (?s ?p ?o) Triple");
-                continue;
+            Triple triple = selectTriple(results.next());
+            if (triple != null) {
+                graph.add(triple);
             }
+        }
 
-            Node objNode;
-            if (object.isLiteral()) {
-                Literal obj = object.asLiteral();
-                objNode = NodeFactory.createLiteral(obj.getString(), obj.getLanguage(), obj.getDatatype());
-            } else {
-                objNode = NodeFactory.createLiteral(object.toString());
-            }
+        return model;
+    }
+
+    /**
+     * Converts a (?s ?p ?o) solution of a SELECT query to a triple. Objects
+     * which are not literals are converted to literals.
+     *
+     * @param sol the solution
+     * @return the triple or null if the solution does not bind ?s, ?p and ?o
+     */
+    private Triple selectTriple(QuerySolution sol) {
+        String subject;
+        String predicate;
+        RDFNode object;
 
-            graph.add(new Triple(
-                    NodeFactory.createURI(subject),
-                    NodeFactory.createURI(predicate),
-                    objNode));
+        try {
+            subject = sol.getResource("s").toString();
+            predicate = sol.getResource("p").toString();
+            object = sol.get("o");
+        } catch (NoSuchElementException e) {
+            logger.error("SELECT query does not return a (?s ?p ?o) Triple");
+            return null;
         }
 
-        return model;
+        Node objNode;
+        if (object.isLiteral()) {
+            Literal obj = object.asLiteral();
+            objNode = NodeFactory.createLiteral(obj.getString(), obj.getLanguage(), obj.getDatatype());
+        } else {
+            objNode = NodeFactory.createLiteral(object.toString());
+        }
+
+        return new Triple(
+                NodeFactory.createURI(subject),
+                NodeFactory.createURI(predicate),
+                objNode);
     }
 
     /**
@@ -1593,15 +2303,24 @@ public class Harvester implements Runnable, RunningHarvester {
      */
     private Model getModel(QueryExecution qExec) {
         setHarvestState(HarvestStates.EXECUTING_QUERY);
+        long startTime = System.currentTimeMillis();
+        Model model = null;
         switch (rdfQueryType) {
             case CONSTRUCT:
-                return getConstructModel(qExec);
+                model = getConstructModel(qExec);
+                break;
             case DESCRIBE:
-                return getDescribeModel(qExec);
+                model = getDescribeModel(qExec);
+                break;
             case SELECT:
-                return getSelectModel(qExec);
+                model = getSelectModel(qExec);
+                break;
         }
-        return null;
+        if (model != null) {
+            resultFormats.record(rdfQueryType == QueryType.SELECT,
+                    System.currentTimeMillis() - startTime, model.size());
+        }
+        return model;
     }
 
     /**
@@ -1610,27 +2329,15 @@ public class Harvester implements Runnable, RunningHarvester {
      * @param model executed queries transformed to model
      */
     private void uploadDataToES(Model model) {
-        boolean retry;
-        int retryCount = 0;
-        do {
-            retry = false;
-            try {
-                BulkRequest bulkRequest = new BulkRequest();
-                if (model != null) {
-                    addModelToES(model, bulkRequest, true);
-                }
-            } catch (QueryExceptionHTTP e) {
-                if (retryCount++ < 5 && e.getResponseCode() >= 500) {
-                    retry = true;
-                    logger.error("Encountered an internal server error "
-                            + "while harvesting. Retrying!");
-                } else {
-                    failed = true;
-                    logger.error("Exception [{}] occurred while harvesting", e.getLocalizedMessage());
-                    return;
-                }
+        // The queries to the endpoint are retried by its EndpointGuard
+        try {
+            if (model != null) {
+                addModelToES(model, true);
             }
-        } while (retry && !stopped);
+        } catch (QueryExceptionHTTP | EndpointUnavailable e) {
+            failed = true;
+            logger.error("Exception [{}] occurred while harvesting", e.getLocalizedMessage());
+        }
     }
 
     /**
@@ -1639,59 +2346,639 @@ public class Harvester implements Runnable, RunningHarvester {
      */
     private void harvestFromEndpoint() {
         logger.info("Harvest from endpoint ---------------------------------------------------------------");
+        probeResultFormat();
+        String settingsHash = river == null ? "" : ContentFingerprint.ofSettings(river.getRiverSettings());
+        fingerprint = new ContentFingerprint(settingsHash);
+        if ((pageSize > 0 || streaming || isOrderedSelect()) && canStream()) {
+            if (harvestFromEndpointStreaming()) return;
+            // The documents streamed so far are replaced by the complete ones
+            fingerprint = new ContentFingerprint(settingsHash);
+        }
+        if (maxInMemoryTriples > 0) {
+            harvestFromEndpointSpilling();
+            return;
+        }
         Model model = ModelFactory.createDefaultModel();
+        List<Callable<Void>> tasks = new ArrayList<>();
         int queryNumber = 0;
 
         try {
             for (String rdfQuery : rdfQueries) {
-                if (stopped) return;
-                queryNumber++;
+                int currentQueryNumber = ++queryNumber;
+                for (Query query : partitionQuery(parseQuery(rdfQuery, currentQueryNumber), currentQueryNumber)) {
+                    tasks.add(() -> {
+                        if (stopped) return null;
+                        if (pageSize > 0) {
+                            harvestQueryPaged(query, currentQueryNumber, page -> {
+                                synchronized (model) {
+                                    model.add(page);
+                                }
+                            });
+                            return null;
+                        }
+                        Model result = executeQuery(query, currentQueryNumber);
+                        if (result == null) return null;
+                        synchronized (model) {
+                            model.add(result);
+                        }
+                        return null;
+                    });
+                }
+            }
+            runQueryTasks(tasks);
+            if (stopped) return;
+            logResultFormatTimings();
+            fingerprint.add(model);
+            if (checkUnchanged()) return;
+            uploadDataToES(model);
+        } catch (Exception e) {
+            failed = true;
+        }
+    }
 
-                QueryExecution qExec = getExecutableQuery(rdfQuery, queryNumber);
+    /**
+     * Records the {@link #fingerprint} of the harvested data and compares it
+     * with the one of the last successful harvest. The data is unchanged when
+     * the fingerprints match, the river has no dumps and its index exists.
+     *
+     * @return true if the data did not change and should not be indexed again
+     */
+    private boolean checkUnchanged() {
+        String value = fingerprint.value();
+        updateRecord.setFingerprint(value);
+        logger.info("Fingerprint of {} harvested triples: {}", fingerprint.getCount(), value);
+        unchanged = skipUnchanged && rdfUris.isEmpty() && value.equals(previousFingerprint)
+                && indexer.dashboardManager.indexExists(indexName);
+        if (unchanged) {
+            logger.info("Harvested data did not change since the last successful harvest, " +
+                    "keeping index {}", indexName);
+        }
+        return unchanged;
+    }
 
-                model.add(executeQuery(qExec, queryNumber));
+    /**
+     * Queries the {@link #rdfEndpoint(String)} with each of the {@link #rdfQueries}
+     * and collects the results into a {@link SpillableModel}, which is moved to
+     * disk when it exceeds {@link #maxInMemoryTriples}. The subjects are then
+     * indexed from the collected model.
+     */
+    private void harvestFromEndpointSpilling() {
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int queryNumber = 0;
 
+        try (SpillableModel store = new SpillableModel(maxInMemoryTriples, spillDirectory)) {
+            store.start();
+            for (String rdfQuery : rdfQueries) {
+                int currentQueryNumber = ++queryNumber;
+                for (Query query : partitionQuery(parseQuery(rdfQuery, currentQueryNumber), currentQueryNumber)) {
+                    tasks.add(() -> {
+                        if (stopped) return null;
+                        if (pageSize > 0) {
+                            harvestQueryPaged(query, currentQueryNumber, page -> pushTriples(page, store));
+                        } else {
+                            streamQuery(query, currentQueryNumber, store);
+                        }
+                        return null;
+                    });
+                }
             }
-            uploadDataToES(model);
+            runQueryTasks(tasks);
+            if (stopped) return;
+            store.finish();
+            logResultFormatTimings();
+            fingerprint.add(store.getModel());
+            if (checkUnchanged()) return;
+            if (store.isSpilled()) {
+                logger.info("Indexing {} triples from disk", store.getModel().size());
+            }
+            uploadDataToES(store.getModel());
         } catch (Exception e) {
+            logger.error("Exception [{}] occurred while harvesting", e.getLocalizedMessage());
             failed = true;
         }
     }
 
-    private QueryExecution getExecutableQuery(String rdfQuery, int queryNumber) {
-        Query query;
-        QueryExecution qExec;
+    /**
+     * Checks whether the results of the {@link #rdfQueries} can be indexed
+     * while they are received, see
+     * {@link QueryRewriter#checkGroupedBySubject(List)}. A resource indexed
+     * from part of its triples would replace its complete document.
+     *
+     * @return true if the results can be streamed, false if they have to be
+     * harvested whole
+     */
+    private boolean canStream() {
+        List<Query> queries = new ArrayList<>();
+        try {
+            for (String rdfQuery : rdfQueries) {
+                queries.add(QueryFactory.create(rdfQuery));
+            }
+        } catch (QueryParseException e) {
+            // Reported by the harvest
+            return false;
+        }
+        String problem = QueryRewriter.checkGroupedBySubject(queries);
+        if (problem != null) {
+            logger.warn("The results cannot be indexed while they are received, {}; " +
+                    "they are harvested whole instead", problem);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queries the {@link #rdfEndpoint(String)} with the single query of the
+     * river, ordered by subject, and indexes the returned triples while they
+     * are being received. Only the subjects within the
+     * {@link #streamingWindow} are held in memory. When {@link #pageSize} is
+     * set, the query is executed page by page into a stream holding at most
+     * two pages. SELECT results are in subject order, their stream holds a
+     * single subject. The partitions of the query are disjoint in subjects,
+     * every partition gets its own stream so their triples never interleave.
+     *
+     * @return false if the triples of a subject arrived after the subject was
+     * indexed, the results then have to be harvested whole
+     */
+    private boolean harvestFromEndpointStreaming() {
+        long startTime = System.currentTimeMillis();
+        BulkIndexer bulkIndexer = createBulkIndexer();
+        SubjectGroupingStream.SubjectHandler handler =
+                (subject, triples) -> indexSubject(subject, triples, bulkIndexer);
+        List<SubjectGroupingStream> streams = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        try {
+            Query parsed = parseQuery(rdfQueries.get(0), 1);
+            if (pageSize <= 0) {
+                // The pages get the order of their own
+                parsed = QueryRewriter.orderBySubject(parsed, QueryRewriter.subjectVariable(parsed));
+            }
+            int window = streamingWindow;
+            if (pageSize > 0) {
+                // Pages are held whole, the next page tells which subjects are complete
+                window = Integer.MAX_VALUE;
+            } else if (rdfQueryType == QueryType.SELECT) {
+                window = 1;
+            }
+            for (Query query : partitionQuery(parsed, 1)) {
+                SubjectGroupingStream stream = new SubjectGroupingStream(window, handler);
+                streams.add(stream);
+                tasks.add(() -> {
+                    if (stopped) return null;
+                    stream.start();
+                    if (pageSize > 0) {
+                        harvestQueryPaged(query, 1, page -> feedPage(page, stream));
+                    } else {
+                        streamQuery(query, 1, stream);
+                    }
+                    if (!stopped) {
+                        stream.finish();
+                    }
+                    return null;
+                });
+            }
+            runQueryTasks(tasks);
+            if (stopped) return true;
+            bulkIndexer.close();
+        } catch (SubjectGroupingStream.SubjectReopenedException e) {
+            logger.warn("{}: the results are not grouped by subject, they are harvested whole instead",
+                    e.getMessage());
+            return false;
+        } catch (Exception e) {
+            logger.error("Exception [{}] occurred while harvesting", e.getLocalizedMessage());
+            failed = true;
+            return true;
+        } finally {
+            // Nothing may be written to the temporary index once it is rolled back
+            bulkIndexer.cancel();
+        }
+        long tripleCount = 0;
+        long subjectCount = 0;
+        for (SubjectGroupingStream s : streams) {
+            tripleCount += s.getTripleCount();
+            subjectCount += s.getSubjectCount();
+        }
+        logger.info("Streamed {} triples of {} subjects", tripleCount, subjectCount);
+        logResultFormatTimings();
+        logIndexedDocuments(bulkIndexer, startTime);
+        // The documents are already indexed, only the index swap can be skipped
+        checkUnchanged();
+        return true;
+    }
+
+    private boolean isOrderedSelect() {
+        return selectOrderedBySubject && rdfQueryType == QueryType.SELECT;
+    }
+
+    /**
+     * Splits a query into {@link #partitions} queries over disjoint sets of
+     * subjects. The query is kept whole when it has only one partition or its
+     * subject variable is not bound in the WHERE clause.
+     *
+     * @param query       the parsed river query
+     * @param queryNumber number of the query in {@link #rdfQueries}
+     * @return queries to execute instead of the query
+     */
+    private List<Query> partitionQuery(Query query, int queryNumber) {
+        List<Query> queries = new ArrayList<>();
+        String subjectVar = QueryRewriter.subjectVariable(query);
+        if (partitions <= 1 || !QueryRewriter.canPartition(query, subjectVar)) {
+            if (partitions > 1) {
+                logger.warn("Query {} has LIMIT or OFFSET or does not bind ?{}, it will not be partitioned",
+                        queryNumber, subjectVar);
+            }
+            queries.add(query);
+            return queries;
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            queries.add(QueryRewriter.partition(query, subjectVar, partition, partitions));
+        }
+        logger.info("Query {} split into {} partitions over ?{}", queryNumber, partitions, subjectVar);
+        return queries;
+    }
+
+    /**
+     * @return the number of connections to the {@link #rdfEndpoint} the
+     * harvest may use at once: a query, or {@link #pagePrefetch} pages, per
+     * query thread, and a label lookup per thread building documents
+     */
+    private int getConnectionDemand() {
+        int queryThreads = Math.max(queryParallelism, partitions);
+        int queries = queryThreads * (pageSize > 0 ? pagePrefetch : 1);
+        return queries + Math.max(queryThreads, indexingParallelism);
+    }
+
+    /**
+     * Runs one task per query (or query partition) of the harvest. Up to
+     * {@link #queryParallelism} tasks, or {@link #partitions} if higher, run
+     * at once, each on its own thread. The tasks are awaited in the order
+     * they complete, so the first failing task, whichever it is, cancels the
+     * others at once.
+     *
+     * @param tasks tasks to run
+     * @return results of the tasks, in the order of the tasks
+     */
+    private <T> List<T> runQueryTasks(List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>();
+        int threads = Math.min(Math.max(queryParallelism, partitions), tasks.size());
+        if (threads <= 1) {
+            for (Callable<T> task : tasks) {
+                if (stopped) break;
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        logger.info("Executing {} queries, {} at once", tasks.size(), threads);
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService queryExecutor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, riverName + "-query-" + threadCounter.incrementAndGet()));
+        try {
+            CompletionService<T> completion = new ExecutorCompletionService<>(queryExecutor);
+            Map<Future<T>, Integer> positions = new HashMap<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                positions.put(completion.submit(tasks.get(i)), i);
+                results.add(null);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<T> future = completion.take();
+                try {
+                    results.set(positions.get(future), future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                    throw e;
+                }
+            }
+        } finally {
+            queryExecutor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Executes a query and pushes the returned triples into the stream. The
+     * (?s ?p ?o) solutions of SELECT queries are converted to triples one by one.
+     *
+     * Only the request is retried on failure, not the reading of the results.
+     *
+     * @param query       the parsed query
+     * @param queryNumber number of the query in {@link #rdfQueries}
+     * @param stream      sink receiving the triples
+     */
+    private void streamQuery(Query query, int queryNumber, StreamRDF stream) {
+        logger.info(
+                "Streaming {}/{} query on index [{}] and type [{}]",
+                queryNumber, rdfQueries.size(), indexName, typeName);
+        setHarvestState(HarvestStates.EXECUTING_QUERY);
+        long startTime = System.nanoTime();
+        // Time spent by the stream on the triples, not on reading them
+        long streamNanos = 0;
+        long count = 0;
+        List<QueryExecution> executions = new ArrayList<>();
+        try {
+            if (rdfQueryType == QueryType.SELECT) {
+                ResultSet results = openQuery(query, executions, QueryExecution::execSelect);
+                setHarvestState(HarvestStates.INDEXING);
+                while (results.hasNext()) {
+                    if (stopped) return;
+                    Triple triple = selectTriple(results.next());
+                    count++;
+                    if (triple != null) {
+                        long pushed = System.nanoTime();
+                        stream.triple(triple);
+                        streamNanos += System.nanoTime() - pushed;
+                    }
+                }
+            } else {
+                Iterator<Triple> triples = openQuery(query, executions,
+                        rdfQueryType == QueryType.DESCRIBE
+                                ? QueryExecution::execDescribeTriples
+                                : QueryExecution::execConstructTriples);
+                setHarvestState(HarvestStates.INDEXING);
+                while (triples.hasNext()) {
+                    if (stopped) return;
+                    Triple triple = triples.next();
+                    count++;
+                    long pushed = System.nanoTime();
+                    stream.triple(triple);
+                    streamNanos += System.nanoTime() - pushed;
+                }
+            }
+            // Without the indexing of the subjects completed meanwhile
+            resultFormats.record(rdfQueryType == QueryType.SELECT,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime - streamNanos), count);
+        } catch (SubjectGroupingStream.SubjectReopenedException e) {
+            // Not a failure of the query
+            throw e;
+        } catch (Exception e) {
+            logger.error("Harvesting failed on {}. query on index [{}] and type [{}]",
+                    queryNumber, indexName, typeName);
+            logger.error("Exception: {}", e.getLocalizedMessage());
+            logger.error("Query:\n{}", rdfQueries.get(queryNumber - 1));
+            throw e;
+        } finally {
+            for (QueryExecution qExec : executions) {
+                qExec.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a query to the endpoint through its {@link EndpointGuard}, which
+     * retries the request when it fails.
+     *
+     * @param query      the query
+     * @param executions receives the executions created, to be closed by the
+     *                   caller once the results are read
+     * @param exec       executes the query
+     * @return the results of the query
+     */
+    private <T> T openQuery(Query query, List<QueryExecution> executions, Function<QueryExecution, T> exec) {
+        return EndpointGuard.of(rdfEndpoint).call(() -> {
+            QueryExecution qExec = createQueryExecution(query);
+            executions.add(qExec);
+            return exec.apply(qExec);
+        }, () -> stopped);
+    }
+
+    /**
+     * Executes a query through the {@link EndpointGuard} of the endpoint
+     *
+     * @param query the query
+     * @return model retrieved by querying the endpoint
+     */
+    private Model queryModel(Query query) {
+        return EndpointGuard.of(rdfEndpoint).call(() -> {
+            QueryExecution qExec = createQueryExecution(query);
+            try {
+                return getModel(qExec);
+            } finally {
+                qExec.close();
+            }
+        }, () -> stopped);
+    }
+
+    /**
+     * Executes a query page by page and hands every page over as soon as it
+     * is received. Up to {@link #pagePrefetch} following pages are requested
+     * while the current one is being handled. A failed page is requested
+     * again by the {@link EndpointGuard} of the endpoint. The pages end with
+     * the first one without solutions.
+     *
+     * @param query       the parsed query
+     * @param queryNumber number of the query in {@link #rdfQueries}
+     * @param pageHandler receives the model of every page
+     */
+    private void harvestQueryPaged(Query query, int queryNumber, Consumer<Model> pageHandler) throws Exception {
+        String subjectVar = QueryRewriter.subjectVariable(query);
+        logger.info(
+                "Harvesting {}/{} query on index [{}] and type [{}] in pages of {}",
+                queryNumber, rdfQueries.size(), indexName, typeName, pageSize);
+
+        ExecutorService pageFetcher = Executors.newFixedThreadPool(pagePrefetch);
+        Deque<Query> pageQueries = new ArrayDeque<>();
+        Deque<Future<Model>> pages = new ArrayDeque<>();
+        long nextPage = 0;
+        long pageNumber = 0;
+        try {
+            for (int i = 0; i < pagePrefetch; i++) {
+                Query pageQuery = QueryRewriter.page(query, subjectVar, nextPage++, pageSize);
+                if (pageQuery == null) break;
+                pageQueries.add(pageQuery);
+                pages.add(pageFetcher.submit(() -> fetchPage(pageQuery, queryNumber)));
+            }
+
+            while (!pages.isEmpty()) {
+                if (stopped) return;
+                Query currentQuery = pageQueries.poll();
+                Model page = pages.poll().get();
+                // A page of solutions may construct no triple
+                if (page == null || (page.isEmpty() && !hasSolutions(currentQuery))) break;
+
+                Query pageQuery = QueryRewriter.page(query, subjectVar, nextPage++, pageSize);
+                if (pageQuery != null) {
+                    pageQueries.add(pageQuery);
+                    pages.add(pageFetcher.submit(() -> fetchPage(pageQuery, queryNumber)));
+                }
+
+                setHarvestState(HarvestStates.INDEXING);
+                pageHandler.accept(page);
+                logger.info("Query {}: page {} (offset {}) with {} triples harvested",
+                        queryNumber, pageNumber, pageNumber * pageSize, page.size());
+                pageNumber++;
+            }
+        } finally {
+            for (Future<Model> page : pages) {
+                page.cancel(true);
+            }
+            pageFetcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks whether a page without triples still had solutions, which the
+     * CONSTRUCT template did not turn into triples.
+     *
+     * @param pageQuery query of the page
+     * @return true if the page query has solutions
+     */
+    private boolean hasSolutions(Query pageQuery) {
+        Query probe = QueryRewriter.firstSolution(pageQuery);
+        return EndpointGuard.of(rdfEndpoint).call(() -> {
+            QueryEngineHTTP qExec = SparqlHttpClient.configure(
+                    QueryExecutionFactory.createServiceRequest(rdfEndpoint, probe));
+            qExec.setTimeout(EEASettings.QUERY_TIMEOUT_IN_MILLISECONDS);
+            try {
+                return qExec.execSelect().hasNext();
+            } finally {
+                qExec.close();
+            }
+        }, () -> stopped);
+    }
+
+    /**
+     * Executes a page query, retried by the {@link EndpointGuard} when it fails
+     *
+     * @param pageQuery   query of the page
+     * @param queryNumber number of the query in {@link #rdfQueries}
+     * @return model retrieved by querying the endpoint
+     */
+    private Model fetchPage(Query pageQuery, int queryNumber) {
+        try {
+            return queryModel(pageQuery);
+        } catch (RuntimeException e) {
+            logger.error("Harvesting failed on {}. query on index [{}] and type [{}]",
+                    queryNumber, indexName, typeName);
+            logger.error("Exception: {}", e.getLocalizedMessage());
+            logger.error("Query:\n{}", pageQuery);
+            throw e;
+        }
+    }
+
+    /**
+     * Pushes the triples of a page into the stream. The pages are ordered by
+     * subject, so the open subjects missing from the page are complete, while
+     * the subjects of the page are kept open until the next page is received,
+     * in case they continue on it.
+     *
+     * @param page   model of one page
+     * @param stream sink receiving the triples, not limited in subjects
+     */
+    private void feedPage(Model page, SubjectGroupingStream stream) {
+        Set<Node> subjects = new HashSet<>();
+        for (Resource subject : page.listSubjects().toList()) {
+            subjects.add(subject.asNode());
+        }
+        stream.completeExcept(subjects);
+        pushTriples(page, stream);
+    }
+
+    /**
+     * @param page model of one page
+     * @param sink sink receiving the triples of the page
+     */
+    private void pushTriples(Model page, StreamRDF sink) {
+        StmtIterator it = page.listStatements();
+        while (it.hasNext()) {
+            sink.triple(it.nextStatement().asTriple());
+        }
+    }
+
+    /**
+     * Indexes a complete subject received from a {@link SubjectGroupingStream}
+     *
+     * @param subject     the subject
+     * @param triples     all the triples of the subject
+     * @param bulkIndexer bulk stage receiving the documents
+     */
+    private void indexSubject(Node subject, List<Triple> triples, BulkIndexer bulkIndexer) {
+        if (stopped) return;
+        Model model = ModelFactory.createDefaultModel();
+        Graph graph = model.getGraph();
+        for (Triple triple : triples) {
+            // Duplicates are hashed once, as in a model
+            if (!graph.contains(triple)) {
+                graph.add(triple);
+                fingerprint.add(triple);
+            }
+        }
+        Resource rs = model.wrapAsResource(subject);
+        LabelIndex labels = LabelIndex.build(model, getNormalizationPlan().getLabelProperties());
+        indexResource(rs, model, labels, true, bulkIndexer, 0, 0);
+    }
+
+    private Query parseQuery(String rdfQuery, int queryNumber) {
         try {
             logger.info("QUERY:");
             logger.info(rdfQuery);
-            query = QueryFactory.create(rdfQuery);
+            return QueryFactory.create(rdfQuery);
         } catch (QueryParseException qpe) {
             logger.error(
                     "Could not parse query {}. \n [{}]. Please provide a relevant query. {}",
                     queryNumber, rdfQuery, qpe.getLocalizedMessage());
             throw qpe;
         }
+    }
 
-        qExec = QueryExecutionFactory.sparqlService(rdfEndpoint, query);
+    private QueryExecution createQueryExecution(Query query) {
+        QueryEngineHTTP qExec = SparqlHttpClient.configure(
+                QueryExecutionFactory.createServiceRequest(rdfEndpoint, query));
+        resultFormats.configure(qExec, query.isSelectType());
         qExec.setTimeout(EEASettings.QUERY_TIMEOUT_IN_MILLISECONDS);
         return qExec;
     }
 
-    private Model executeQuery(QueryExecution qExec, Integer queryNumber) {
+    /**
+     * Chooses the result format of the river queries when it is set to
+     * "auto". The first river query is executed with LIMIT 1 in each of the
+     * candidate formats, with a short timeout, until the endpoint answers in
+     * the requested format with a readable result.
+     */
+    private void probeResultFormat() {
+        boolean select = rdfQueryType == QueryType.SELECT;
+        if (!resultFormats.needsProbe(select) || rdfQueries.isEmpty()) return;
+
+        Query probeQuery;
+        try {
+            probeQuery = QueryFactory.create(rdfQueries.get(0));
+        } catch (QueryParseException qpe) {
+            return;
+        }
+        probeQuery.setLimit(1);
+        String contentType = resultFormats.probe(select, type -> {
+            try (TypedInputStream in = SparqlHttpClient.get(rdfEndpoint, probeQuery.toString(), type,
+                    EEASettings.FORMAT_PROBE_TIMEOUT_MILLIS)) {
+                String returned = in.getContentType();
+                if (ResultFormats.isSameType(type, returned)) {
+                    ResultFormats.read(in, type, select);
+                }
+                return returned;
+            }
+        });
+        logger.info("Result format probed for [{}]: {}", rdfEndpoint,
+                contentType == null ? "none accepted, using the default" : contentType);
+    }
+
+    private void logResultFormatTimings() {
+        for (String line : resultFormats.summary()) {
+            logger.info("Queries executed and read as {}", line);
+        }
+    }
+
+    private Model executeQuery(Query query, Integer queryNumber) {
         Model model;
         logger.info(
                 "Harvesting {}/{} query on index [{}] and type [{}]",
                 queryNumber, rdfQueries.size(), indexName, typeName);
         try {
-            model = getModel(qExec);
+            model = queryModel(query);
         } catch (Exception e) {
             logger.error("Harvesting failed on {}. query on index [{}] and type [{}]",
                     queryNumber, indexName, typeName);
             logger.error("Exception: {}", e.getLocalizedMessage());
             logger.error("Query:\n{}", rdfQueries.get(queryNumber - 1));
             throw e;
-        } finally {
-            qExec.close();
         }
         return model;
     }
@@ -1717,9 +3004,7 @@ public class Harvester implements Runnable, RunningHarvester {
                 if (stopped) return;
                 logger.info("Creating model - DONE");
 
-                BulkRequest bulkRequest = new BulkRequest();
-
-                addModelToES(model, bulkRequest, true);
+                addModelToES(model, true);
             } catch (RiotException re) {
                 logger.error("Illegal {} character [{}]", lang.getName(), re.getLocalizedMessage());
             } catch (Exception e) {
@@ -1729,55 +3014,47 @@ public class Harvester implements Runnable, RunningHarvester {
         }
     }
 
-    private Map<String, Object> addCountingToJsonMap(Map<String, Object> jsonMap) {
-        Iterator it = jsonMap.entrySet().iterator();
-        Map<String, Object> countingMap = new HashMap<String, Object>();
-        ArrayList<Object> itemsCount = new ArrayList<Object>();
-
-        //TODO: fix
-        while (it.hasNext()) {
-            itemsCount = new ArrayList<Object>();
-            Map.Entry<String, Object> pair = (Map.Entry<String, Object>) it.next();
-
-            if (pair.getValue() instanceof List<?>) {
-                countingMap.put("items_count_" + pair.getKey(), ((List) pair.getValue()).size());
-            } else {
-                if ((pair.getValue() instanceof Number)) {
-                    countingMap.put("items_count_" + pair.getKey(), pair.getValue());
-                } else {
-                    itemsCount.add(pair.getValue());
-                    countingMap.put("items_count_" + pair.getKey(), itemsCount.size());
-                }
-            }
+    /**
+     * Compiles the normalization options once per harvest
+     *
+     * @return the normalization plan of the current harvest
+     */
+    private synchronized NormalizationPlan getNormalizationPlan() {
+        if (normalizationPlan == null) {
+            normalizationPlan = NormalizationPlan.builder()
+                    .addUriForResource(addUriForResource)
+                    .propList(rdfPropList, isWhitePropList)
+                    .normalizeProp(normalizeProp)
+                    .whiteMap(whiteMap)
+                    .blackMap(blackMap)
+                    .normalizeObj(normalizeObj)
+                    .normalizeMissing(normalizeMissing)
+                    .maxValuesPerField(maxValuesPerField)
+                    .prefixes(prefixRegistry)
+                    .labelRules(labelRules)
+                    .addCounting(addCounting)
+                    .nestedLanguages(EEASettings.LANGUAGE_MODE_NESTED.equals(languageMode))
+                    .compile();
         }
-        jsonMap.putAll(countingMap);
-        return jsonMap;
+        return normalizationPlan;
     }
 
     /**
      * Get JSON map for a given resource by applying the river settings
      *
      * @param rs           resource being processed
-     * @param properties   properties to be indexed
      * @param model        model returned by the indexing query
+     * @param labels       labels of the model for the label rules
      * @param getPropLabel if set to true all URI property values will be indexed
      *                     as their label. The label is taken as the value of
      *                     one of the properties set in {@link #uriDescriptionList}.
      * @return map of properties to be indexed for res
      */
-    private HashMap<String, HashMap<String, Object>> getJsonMap(Resource rs, Set<Property> properties, Model model,
+    private HashMap<String, HashMap<String, Object>> getJsonMap(Resource rs, Model model, LabelIndex labels,
                                                                 boolean getPropLabel) {
 
-        ESNormalizer esNormalizer = new ESNormalizer(rs, properties, model, getPropLabel, this);
-        esNormalizer.setAddUriForResource(addUriForResource);
-        esNormalizer.setNormalizeProp(normalizeProp);
-        esNormalizer.setWhiteMap(whiteMap);
-        esNormalizer.setBlackMap(blackMap);
-        esNormalizer.setNormalizeObj(normalizeObj);
-        esNormalizer.setAddLanguage(addLanguage);
-        esNormalizer.setNormalizeMissing(normalizeMissing);
-        esNormalizer.setLanguage(language);
-
+        ESNormalizer esNormalizer = new ESNormalizer(rs, model, getPropLabel, this,
+                getNormalizationPlan(), labels);
         esNormalizer.process();
 
         return esNormalizer.getJsonMaps();
@@ -1787,111 +3064,133 @@ public class Harvester implements Runnable, RunningHarvester {
      * Index all the resources in a Jena Model to ES
      *
      * @param model        the model to index
-     * @param bulkRequest  a BulkRequestBuilder
      * @param getPropLabel if set to true all URI property values will be indexed
      *                     as their label. The label is taken as the value of
      *                     one of the properties set in {@link #uriDescriptionList}.
      */
     @SuppressWarnings("Duplicates")
-    private void addModelToES(Model model, BulkRequest bulkRequest, boolean getPropLabel) {
-        addModelToES(model, bulkRequest, getPropLabel, 0);
+    private void addModelToES(Model model, boolean getPropLabel) {
+        addModelToES(model, getPropLabel, 0);
 
     }
 
 
     @SuppressWarnings("Duplicates")
-    private ArrayList<String> addModelToES(Model model, BulkRequest bulkRequest, boolean getPropLabel, int modelCounter) {
+    private ArrayList<String> addModelToES(Model model, boolean getPropLabel, int modelCounter) {
         logger.info("Adding model to ES");
         setHarvestState(HarvestStates.INDEXING);
-        ArrayList<String> urisWithESErrors = new ArrayList<>();
         long startTime = System.currentTimeMillis();
-        long bulkLength = 0;
-        HashSet<Property> properties = new HashSet<>();
-
-        StmtIterator it = model.listStatements();
-        while (it.hasNext()) {
-            Statement st = it.nextStatement();
-            Property prop = st.getPredicate();
-            String property = prop.toString();
-
-
-            if (rdfPropList.isEmpty()
-                    || (isWhitePropList && rdfPropList.contains(property))
-                    || (!isWhitePropList && !rdfPropList.contains(property))
-                    || (normalizeProp.containsKey(property))) {
-                properties.add(prop);
-            }
-        }
+        BulkIndexer bulkIndexer = createBulkIndexer();
+        LabelIndex labels = LabelIndex.build(model, getNormalizationPlan().getLabelProperties());
 
         ResIterator resIt = model.listSubjects();
-        int jsonMapCounter = 0;
-        while (resIt.hasNext()) {
-            if (stopped) return null;
-            Resource rs = resIt.nextResource();
-
-            long startJsonMap = System.currentTimeMillis();
-
-            HashMap<String, HashMap<String, Object>> jsonMap = getJsonMap(rs, properties, model, getPropLabel);
-            long endJsonMap = System.currentTimeMillis();
-
-            if (DEBUG_TIME) {
-                logger.info("jsonMapTime : #" + modelCounter + "|" + jsonMapCounter + " : " + "{}",
-                        endJsonMap - startJsonMap
-                );
-            }
-
-            jsonMapCounter++;
-
-            if (addCounting) {
-                //TODO: repair hashmap to map
-                //jsonMap = addCountingToJsonMap(jsonMap.get(""));
+        try {
+            if (indexingParallelism > 1) {
+                indexResourcesInParallel(resIt, model, labels, getPropLabel, bulkIndexer, modelCounter);
+                if (stopped) return null;
             }
-            for (String lang : jsonMap.keySet()) {
+            int jsonMapCounter = 0;
+            while (resIt.hasNext()) {
+                if (stopped) return null;
+                Resource rs = resIt.nextResource();
 
-                //TODO: prepareIndex - DONE ; make request async?
-                IndexRequest indexRequest = new IndexRequest(indexWithPrefix, typeName, rs.toString()).source(jsonMap.get(lang));
-                indexRequest = indexRequest.id(indexRequest.id() + "@" + lang);
-                //.source(mapToString(jsonMap)));
-                bulkRequest.add(indexRequest);
+                indexResource(rs, model, labels, getPropLabel, bulkIndexer, modelCounter, jsonMapCounter);
+                jsonMapCounter++;
             }
-            bulkLength++;
 
-            // We want to execute the bulk for every  DEFAULT_BULK_SIZE requests
-            if (bulkLength % EEASettings.DEFAULT_BULK_SIZE == 0) {
-                BulkResponse bulkResponse = null;
+            // Execute remaining requests and wait for the bulks being sent
+            bulkIndexer.close();
+        } finally {
+            // Nothing may be written to the temporary index once it is rolled back
+            bulkIndexer.cancel();
+        }
 
-                //TODO: make request async
-                try {
-                    bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
-                } catch (IOException e) {
-                    logger.error(e.getMessage());
-                }
+        ArrayList<String> urisWithESErrors = bulkIndexer.getUrisWithESErrors();
+        logIndexedDocuments(bulkIndexer, startTime);
+        logger.info("Adding model to ES - Done");
+        return urisWithESErrors;
+    }
 
-                if (bulkResponse.hasFailures()) {
-                    urisWithESErrors = processBulkResponseFailure(bulkResponse);
+    /**
+     * Builds the documents of the resources on {@link #indexingParallelism}
+     * threads. The resources are read in chunks of
+     * {@link EEASettings#INDEXING_CHUNK_SIZE}, each chunk being split among
+     * the threads, and the documents are added to the bulk stage in the
+     * order they are completed.
+     *
+     * @param resIt        the resources to index
+     * @param model        model holding the statements of the resources
+     * @param labels       labels of the model for the label rules
+     * @param getPropLabel if set to true all URI property values will be indexed
+     *                     as their label.
+     * @param bulkIndexer  bulk stage receiving the documents
+     */
+    private void indexResourcesInParallel(ResIterator resIt, Model model, LabelIndex labels,
+                                          boolean getPropLabel, BulkIndexer bulkIndexer, int modelCounter) {
+        logger.info("Building documents on {} threads", indexingParallelism);
+        ForkJoinPool indexingPool = new ForkJoinPool(indexingParallelism);
+        AtomicInteger jsonMapCounter = new AtomicInteger();
+        try {
+            while (resIt.hasNext() && !stopped) {
+                List<Resource> chunk = new ArrayList<>(EEASettings.INDEXING_CHUNK_SIZE);
+                while (resIt.hasNext() && chunk.size() < EEASettings.INDEXING_CHUNK_SIZE) {
+                    chunk.add(resIt.nextResource());
                 }
-
-                // After executing, flush the BulkRequestBuilder.
-                bulkRequest = new BulkRequest();
+                indexingPool.submit(() -> chunk.parallelStream().forEach(rs -> {
+                    if (stopped) return;
+                    indexResource(rs, model, labels, getPropLabel, bulkIndexer, modelCounter,
+                            jsonMapCounter.getAndIncrement());
+                })).get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            indexingPool.shutdownNow();
         }
+    }
 
-        // Execute remaining requests
-        if (bulkRequest.numberOfActions() > 0) {
-            //BulkResponse response = bulkRequest.execute().actionGet();
-            BulkResponse response = null;
-            try {
-                response = client.bulk(bulkRequest, RequestOptions.DEFAULT);
-            } catch (IOException e) {
-                logger.error(e.getMessage());
-            }
+    /**
+     * Builds the documents of a resource and adds them to the bulk stage
+     *
+     * @param rs           resource being processed
+     * @param model        model holding the statements of the resource
+     * @param labels       labels of the model for the label rules
+     * @param getPropLabel if set to true all URI property values will be indexed
+     *                     as their label.
+     * @param bulkIndexer  bulk stage receiving the documents
+     */
+    private void indexResource(Resource rs, Model model, LabelIndex labels, boolean getPropLabel,
+                               BulkIndexer bulkIndexer, int modelCounter, int jsonMapCounter) {
+        long startJsonMap = System.currentTimeMillis();
 
-            // Handle failure by iterating through each bulk response item
-            if (response != null && response.hasFailures()) {
-                urisWithESErrors = processBulkResponseFailure(response);
-            }
+        HashMap<String, HashMap<String, Object>> jsonMap = getJsonMap(rs, model, labels, getPropLabel);
+        long endJsonMap = System.currentTimeMillis();
+
+        if (DEBUG_TIME) {
+            logger.info("jsonMapTime : #" + modelCounter + "|" + jsonMapCounter + " : " + "{}",
+                    endJsonMap - startJsonMap
+            );
         }
-        long documents = bulkLength - urisWithESErrors.size();
+        bulkIndexer.add(rs.toString(), jsonMap);
+    }
+
+    private BulkIndexer createBulkIndexer() {
+        BulkSizeController sizeController = new BulkSizeController(EEASettings.BULK_MIN_ACTIONS,
+                bulkActions, bulkMaxBytes, bulkAdaptive, bulkTargetLatency);
+        BackoffPolicy backoffPolicy = bulkMaxRetries > 0
+                ? BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(bulkRetryDelay), bulkMaxRetries)
+                : BackoffPolicy.noBackoff();
+        return new BulkIndexer(client, indexWithPrefix, typeName, sizeController, bulkConcurrentRequests,
+                backoffPolicy);
+    }
+
+    private void logIndexedDocuments(BulkIndexer bulkIndexer, long startTime) {
+        ArrayList<String> urisWithESErrors = bulkIndexer.getUrisWithESErrors();
+        long documents = bulkIndexer.getResourceCount() - urisWithESErrors.size();
         updateRecord.addToIndexedESHits(documents);
         // Show time taken to index the documents
         logger.info("Indexed {} documents on {}/{} in {} seconds",
@@ -1900,33 +3199,9 @@ public class Harvester implements Runnable, RunningHarvester {
         if (urisWithESErrors.size() > 0) {
             logger.info("Couldn't index {} documents", urisWithESErrors.size());
         }
-        logger.info("Adding model to ES - Done");
-        return urisWithESErrors;
     }
 
 
-    /**
-     * This method processes failures by iterating through each bulk response item
-     *
-     * @param response, a BulkResponse
-     **/
-    private ArrayList<String> processBulkResponseFailure(BulkResponse response) {
-        ArrayList<String> urisWithESErrors = new ArrayList<String>();
-        logger.warn("There were failures when executing bulk : " + response.buildFailureMessage());
-
-        for (BulkItemResponse item : response.getItems()) {
-            if (item.isFailed()) {
-                if (logger.isDebugEnabled()) {
-                    logger.info("Error {} occurred on index {}, type {}, id {} for {} operation "
-                            , item.getFailureMessage(), item.getIndex(), item.getType(), item.getId()
-                            , item.getOpType());
-                }
-                urisWithESErrors.add(String.format("%s %s", item.getId(), item.getFailureMessage()));
-            }
-        }
-        return urisWithESErrors;
-    }
-
     /**
      * Converts a map of results to a String JSON representation for it
      *
@@ -1952,6 +3227,12 @@ public class Harvester implements Runnable, RunningHarvester {
 
     private void rollback() {
         logger.info("Rollback on {} harvest", indexName);
+        discardIndexTemplates();
+        if (productionIndexDeleted) {
+            logger.error("Keeping index {}, index {} was deleted before it could be replaced",
+                    indexWithPrefix, indexName);
+            return;
+        }
         DeleteIndexRequest deleteRequest = new DeleteIndexRequest(indexWithPrefix);
         try {
             client.indices().delete(deleteRequest, RequestOptions.DEFAULT);
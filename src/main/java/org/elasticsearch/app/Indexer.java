@@ -18,6 +18,8 @@ import org.elasticsearch.app.api.server.services.ConfigManager;
 import org.elasticsearch.app.api.server.services.DashboardManager;
 import org.elasticsearch.app.logging.ESLogger;
 import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.app.support.PrefixRegistry;
+import org.elasticsearch.app.support.SparqlHttpClient;
 import org.elasticsearch.client.*;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
@@ -228,12 +230,15 @@ public class Indexer {
         this.riverIndex = (env.get("river_index") != null) ? env.get("river_index") : EEASettings.DEFAULT_RIVER_INDEX;
         this.loglevel = (env.get("log_level") != null) ? env.get("log_level") : EEASettings.LOG_LEVEL;
         this.cacheDurationInSeconds = (env.get("cache_duration_in_seconds") != null) ? Integer.parseInt(env.get("cache_duration_in_seconds")) : EEASettings.CACHE_DURATION_IN_SECONDS;
+        int sparqlConnections = (env.get("sparql_max_connections") != null) ? Integer.parseInt(env.get("sparql_max_connections")) : EEASettings.SPARQL_MAX_CONNECTIONS;
+        int sparqlConnectionsPerEndpoint = (env.get("sparql_max_connections_per_endpoint") != null) ? Integer.parseInt(env.get("sparql_max_connections_per_endpoint")) : EEASettings.SPARQL_MAX_CONNECTIONS_PER_ENDPOINT;
 
 
         credentialsProvider.setCredentials(AuthScope.ANY,
                 new UsernamePasswordCredentials(user, pass));
 
         clientES = getRestClient(hostES, portES);
+        SparqlHttpClient.install(sparqlConnections, sparqlConnectionsPerEndpoint);
         clientKibana = getRestClient(hostKibana, portKibana, kibanaBasePath);
 
         logger.debug("USERNAME: " + user);
@@ -401,7 +406,87 @@ public class Indexer {
                         EEASettings.DEFAULT_SYNC_TIME_PROP))
                 .rdfSyncOldData(XContentMapValues.nodeBooleanValue(
                         rdfSettings.get("syncOldData"),
-                        EEASettings.DEFAULT_SYNC_OLD_DATA));
+                        EEASettings.DEFAULT_SYNC_OLD_DATA))
+                .rdfStreaming(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("streaming"),
+                        EEASettings.DEFAULT_STREAMING))
+                .rdfStreamingWindow(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("streamingWindow"),
+                        EEASettings.DEFAULT_STREAMING_WINDOW))
+                .rdfSelectOrderedBySubject(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("selectOrderedBySubject"),
+                        EEASettings.DEFAULT_SELECT_ORDERED_BY_SUBJECT))
+                .rdfSkipUnchanged(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("skipUnchanged"),
+                        EEASettings.DEFAULT_SKIP_UNCHANGED))
+                .rdfMaxInMemoryTriples(XContentMapValues.nodeLongValue(
+                        rdfSettings.get("maxInMemoryTriples"),
+                        EEASettings.DEFAULT_MAX_IN_MEMORY_TRIPLES))
+                .rdfMaxConnections(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("maxConnections"),
+                        EEASettings.DEFAULT_MAX_CONNECTIONS))
+                .rdfConstructFormat(XContentMapValues.nodeStringValue(
+                        rdfSettings.get("constructFormat"),
+                        EEASettings.DEFAULT_CONSTRUCT_FORMAT))
+                .rdfSelectFormat(XContentMapValues.nodeStringValue(
+                        rdfSettings.get("selectFormat"),
+                        EEASettings.DEFAULT_SELECT_FORMAT))
+                .rdfPageSize(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("pageSize"),
+                        EEASettings.DEFAULT_PAGE_SIZE))
+                .rdfPagePrefetch(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("pagePrefetch"),
+                        EEASettings.DEFAULT_PAGE_PREFETCH))
+                .rdfQueryParallelism(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("queryParallelism"),
+                        EEASettings.DEFAULT_QUERY_PARALLELISM))
+                .rdfPartitions(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("partitions"),
+                        EEASettings.DEFAULT_PARTITIONS))
+                .rdfIndexingParallelism(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("indexingParallelism"),
+                        EEASettings.DEFAULT_INDEXING_PARALLELISM))
+                .rdfBulkConcurrentRequests(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("bulkConcurrentRequests"),
+                        EEASettings.DEFAULT_BULK_CONCURRENT_REQUESTS))
+                .rdfBulkActions(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("bulkActions"),
+                        EEASettings.DEFAULT_BULK_ACTIONS))
+                .rdfBulkMaxBytes(XContentMapValues.nodeLongValue(
+                        rdfSettings.get("bulkMaxBytes"),
+                        EEASettings.DEFAULT_BULK_MAX_BYTES))
+                .rdfBulkAdaptive(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("bulkAdaptive"),
+                        EEASettings.DEFAULT_BULK_ADAPTIVE))
+                .rdfBulkTargetLatency(XContentMapValues.nodeLongValue(
+                        rdfSettings.get("bulkTargetLatency"),
+                        EEASettings.DEFAULT_BULK_TARGET_LATENCY))
+                .rdfBulkMaxRetries(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("bulkMaxRetries"),
+                        EEASettings.DEFAULT_BULK_MAX_RETRIES))
+                .rdfBulkRetryDelay(XContentMapValues.nodeLongValue(
+                        rdfSettings.get("bulkRetryDelay"),
+                        EEASettings.DEFAULT_BULK_RETRY_DELAY))
+                .rdfOptimizeIndexBuild(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("optimizeIndexBuild"),
+                        EEASettings.DEFAULT_OPTIMIZE_INDEX_BUILD))
+                .rdfExplicitMapping(XContentMapValues.nodeBooleanValue(
+                        rdfSettings.get("explicitMapping"),
+                        EEASettings.DEFAULT_EXPLICIT_MAPPING))
+                .rdfDynamicMapping(XContentMapValues.nodeStringValue(
+                        rdfSettings.get("dynamicMapping"),
+                        EEASettings.DEFAULT_DYNAMIC_MAPPING))
+                .rdfDefaultStringType(XContentMapValues.nodeStringValue(
+                        rdfSettings.get("defaultStringType"),
+                        EEASettings.DEFAULT_STRING_TYPE))
+                .rdfMaxValuesPerField(XContentMapValues.nodeIntegerValue(
+                        rdfSettings.get("maxValuesPerField"),
+                        EEASettings.DEFAULT_MAX_VALUES_PER_FIELD))
+                .rdfLanguageMode(XContentMapValues.nodeStringValue(
+                        rdfSettings.get("languageMode"),
+                        EEASettings.DEFAULT_LANGUAGE_MODE));
+
+        harv.rdfPrefixRegistry(PrefixRegistry.fromSettings(rdfSettings));
 
         if (rdfSettings.containsKey("proplist")) {
             harv.rdfPropList(getStrListFromSettings(rdfSettings, "proplist"));
@@ -427,6 +512,12 @@ public class Indexer {
         if (rdfSettings.containsKey("whiteMap")) {
             harv.rdfWhiteMap(getStrObjMapFromSettings(rdfSettings, "whiteMap"));
         }
+        if (rdfSettings.containsKey("labelRules")) {
+            harv.rdfLabelRules(getStrObjMapFromSettings(rdfSettings, "labelRules"));
+        }
+        if (rdfSettings.containsKey("fieldTypes")) {
+            harv.rdfFieldTypes(getStrObjMapFromSettings(rdfSettings, "fieldTypes"));
+        }
         //TODO : change to index
         if (settings.containsKey("index")) {
             Map<String, Object> indexSettings = extractSettings(settings, "index");
@@ -49,6 +49,11 @@ public class IndexerController {
         return configManager.getConfig(configId);
     }
 
+    @GetMapping("/configs/{configId}/prefixes")
+    public Map<String, String> getFieldPrefixes(@PathVariable long configId) {
+        return configManager.getFieldPrefixes(configId);
+    }
+
     @GetMapping("/export/configs")
     public List<Map<String, Object>> exportConfigs() {
         return configManager.getAllConfigs();
@@ -128,6 +128,13 @@ public class River {
         return updateRecordList;
     }
 
+    public UpdateRecord getLastSuccessfulUpdateRecord() {
+        return updateHistory.stream()
+                .filter(s -> s.getFinishState().equals(UpdateStates.SUCCESS))
+                .max(Comparator.comparing(UpdateRecord::getLastUpdateStartDate, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .orElse(null);
+    }
+
     public void addUpdateRecord(UpdateRecord updateRecord) {
         updateHistory.add(updateRecord);
     }
@@ -26,6 +26,10 @@ public class UpdateRecord {
     @Basic(optional = false)
     private long indexedESHits;
 
+    @Column
+    @Basic
+    private String fingerprint;
+
     public UpdateRecord() {
         finishState = UpdateStates.FAILED;
         this.lastUpdateStartDate = new Date(System.currentTimeMillis());
@@ -73,4 +77,12 @@ public class UpdateRecord {
     public void addToIndexedESHits(long indexedESHits) {
         this.indexedESHits += indexedESHits;
     }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
 }
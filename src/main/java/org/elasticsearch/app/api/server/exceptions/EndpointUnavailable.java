@@ -0,0 +1,26 @@
+package org.elasticsearch.app.api.server.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class EndpointUnavailable extends RuntimeException {
+    public EndpointUnavailable() {
+    }
+
+    public EndpointUnavailable(String message) {
+        super(message);
+    }
+
+    public EndpointUnavailable(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public EndpointUnavailable(Throwable cause) {
+        super(cause);
+    }
+
+    public EndpointUnavailable(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
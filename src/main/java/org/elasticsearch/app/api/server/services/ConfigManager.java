@@ -11,6 +11,7 @@ import org.elasticsearch.app.api.server.scheduler.RunScheduledIndexing;
 import org.elasticsearch.app.api.server.scheduler.RunningHarvester;
 import org.elasticsearch.app.logging.ESLogger;
 import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.app.support.PrefixRegistry;
 import org.elasticsearch.app.api.server.entities.River;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
@@ -123,6 +124,30 @@ public class ConfigManager {
         return riverDAO.getById(configId);
     }
 
+    /**
+     * @param configId id of the config
+     * @return the namespaces by prefix of the compact field names of the
+     * config's index, empty if its field names are not compacted
+     */
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getFieldPrefixes(long configId) throws ConfigNotFoundException {
+        Map<String, Object> settings = getRiver(configId).getRiverSettings();
+        if (settings != null && !settings.containsKey("eeaRDF") && settings.get("syncReq") instanceof Map)
+            settings = (Map<String, Object>) settings.get("syncReq");
+        Object rdfSettings = settings == null ? null : settings.get("eeaRDF");
+        return PrefixRegistry.fromSettings(rdfSettings instanceof Map
+                ? (Map<String, Object>) rdfSettings : null).getPrefixes();
+    }
+
+    @Transactional(readOnly = true)
+    public String getLastSuccessfulFingerprint(String indexName) {
+        River river = riverDAO.findByRiverName(indexName);
+        if (Objects.isNull(river)) return null;
+        UpdateRecord updateRecord = river.getLastSuccessfulUpdateRecord();
+        return Objects.isNull(updateRecord) ? null : updateRecord.getFingerprint();
+    }
+
     @Transactional
     public void addUpdateRecordToIndex(String indexName, UpdateRecord updateRecord) {
         River river = riverDAO.findByRiverName(indexName);
@@ -0,0 +1,334 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk stage of a harvest. Collects the documents of indexed resources and
+ * sends them to ES once the {@link BulkSizeController} finds the bulk full.
+ * The documents of a resource are always sent in the same bulk.
+ * <p>
+ * The bulks are sent asynchronously, so the documents keep being built while
+ * the earlier bulks are written. At most {@link #maxInFlight} bulks are sent
+ * at once, sending one more waits for one of them to complete.
+ * <p>
+ * The requests rejected with a 429 or 503 status, or whole bulks failing for
+ * these statuses or a connection failure, are sent again following the
+ * backoff policy. A bulk being retried keeps its place among the bulks in
+ * flight, so an overloaded ES slows down the building of the documents
+ * instead of losing them.
+ */
+public class BulkIndexer {
+
+    private final ESLogger logger = Loggers.getLogger(BulkIndexer.class);
+
+    /* Sends the retried requests once their delay is over */
+    private static final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "bulk-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final String type;
+    private final BulkSizeController sizeController;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final BackoffPolicy backoffPolicy;
+
+    private BulkRequest bulkRequest = new BulkRequest();
+    private long resourceCount = 0;
+    /* Set once the harvest is given up, no more requests are sent */
+    private volatile boolean cancelled = false;
+    /* Filled by the bulk callbacks, guarded by itself */
+    private final ArrayList<String> urisWithESErrors = new ArrayList<>();
+
+    /**
+     * @param client         ES client
+     * @param index          index of the documents
+     * @param type           type of the documents
+     * @param sizeController decides when a bulk is sent
+     * @param maxInFlight    maximum number of bulks sent at once
+     * @param backoffPolicy  delays before sending again the requests rejected
+     *                       because ES is overloaded
+     */
+    public BulkIndexer(RestHighLevelClient client, String index, String type,
+                       BulkSizeController sizeController, int maxInFlight, BackoffPolicy backoffPolicy) {
+        this.client = client;
+        this.index = index;
+        this.type = type;
+        this.sizeController = sizeController;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    /**
+     * Adds all language variants of a resource to the current bulk. Each variant
+     * is indexed with the id {@code <uri>@<lang>}.
+     *
+     * @param uri      URI of the resource
+     * @param jsonMaps documents of the resource keyed by language
+     */
+    public void add(String uri, HashMap<String, HashMap<String, Object>> jsonMaps) {
+        // Serialized by the calling thread, outside of the lock
+        List<IndexRequest> indexRequests = new ArrayList<>(jsonMaps.size());
+        for (Map.Entry<String, HashMap<String, Object>> entry : jsonMaps.entrySet()) {
+            indexRequests.add(new IndexRequest(index, type, uri + "@" + entry.getKey())
+                    .source(DocumentWriter.write(entry.getValue()), XContentType.JSON));
+        }
+        add(indexRequests);
+    }
+
+    private synchronized void add(List<IndexRequest> indexRequests) {
+        if (cancelled) return;
+        for (IndexRequest indexRequest : indexRequests) {
+            bulkRequest.add(indexRequest);
+        }
+        resourceCount++;
+
+        if (sizeController.isFull(bulkRequest.numberOfActions(), bulkRequest.estimatedSizeInBytes())) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending requests, if any, without waiting for the response.
+     * Waits first while {@link #maxInFlight} bulks are being sent, which holds
+     * back the threads adding documents.
+     */
+    public synchronized void flush() {
+        if (cancelled || bulkRequest.numberOfActions() == 0) return;
+
+        BulkRequest request = bulkRequest;
+        // Start a new bulk while this one is sent
+        bulkRequest = new BulkRequest();
+
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted before sending a bulk of {} requests", request.numberOfActions());
+            recordFailures(request, "interrupted");
+            return;
+        }
+        send(request, backoffPolicy.iterator());
+    }
+
+    /**
+     * Sends a bulk holding a permit of {@link #inFlight}. The requests
+     * rejected because ES is overloaded are sent again after the next delay
+     * of the backoff, still holding the permit, which is released once every
+     * request is indexed or given up.
+     */
+    private void send(BulkRequest request, Iterator<TimeValue> backoff) {
+        long start = System.nanoTime();
+        execute(request, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse bulkResponse) {
+                try {
+                    BulkRequest retry = new BulkRequest();
+                    boolean rejected = false;
+                    // Handle failure by iterating through each bulk response item
+                    if (bulkResponse.hasFailures()) {
+                        rejected = processBulkResponseFailure(request, bulkResponse,
+                                backoff.hasNext() ? retry : null);
+                    }
+                    sizeController.onBulkCompleted(elapsedMillis(start), rejected);
+                    retryOrRelease(retry, backoff);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to process the response of a bulk: {}", e.getMessage());
+                    inFlight.release();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                try {
+                    sizeController.onBulkCompleted(elapsedMillis(start), true);
+                    if (isRetryable(e) && backoff.hasNext()) {
+                        logger.warn("Bulk of {} requests failed: {}", request.numberOfActions(), e.getMessage());
+                        retryOrRelease(request, backoff);
+                        return;
+                    }
+                    logger.error("Bulk of {} requests failed: {}", request.numberOfActions(), e.getMessage());
+                    recordFailures(request, e.getMessage());
+                    inFlight.release();
+                } catch (RuntimeException re) {
+                    logger.error("Failed to process the failure of a bulk: {}", re.getMessage());
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a bulk to ES, replaced by the tests.
+     *
+     * @param request  the bulk
+     * @param listener receives the response of ES
+     */
+    void execute(BulkRequest request, ActionListener<BulkResponse> listener) {
+        client.bulkAsync(request, RequestOptions.DEFAULT, listener);
+    }
+
+    private void retryOrRelease(BulkRequest retry, Iterator<TimeValue> backoff) {
+        if (retry.numberOfActions() == 0) {
+            inFlight.release();
+            return;
+        }
+        if (cancelled) {
+            recordFailures(retry, "cancelled");
+            inFlight.release();
+            return;
+        }
+        TimeValue delay = backoff.next();
+        logger.info("Retrying {} requests in {}", retry.numberOfActions(), delay);
+        retryScheduler.schedule(() -> {
+            if (cancelled) {
+                recordFailures(retry, "cancelled");
+                inFlight.release();
+            } else {
+                send(retry, backoff);
+            }
+        }, delay.millis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param e failure of a whole bulk
+     * @return true if ES is overloaded or could not be reached
+     */
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof ElasticsearchException) {
+            return isRetryable(((ElasticsearchException) e).status());
+        }
+        if (e instanceof ResponseException) {
+            return isRetryable(RestStatus.fromCode(
+                    ((ResponseException) e).getResponse().getStatusLine().getStatusCode()));
+        }
+        // Connection failures
+        return e instanceof IOException;
+    }
+
+    private static boolean isRetryable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * Sends the pending requests and waits for every bulk sent to complete.
+     */
+    public void close() {
+        flush();
+        awaitInFlight();
+    }
+
+    /**
+     * Gives up the pending requests and the retries, then waits for the bulks
+     * already sent to complete, so nothing is written to the index anymore
+     * once it returns. Documents added afterwards are ignored. Does nothing
+     * more than waiting after {@link #close()}.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            bulkRequest = new BulkRequest();
+        }
+        awaitInFlight();
+    }
+
+    private void awaitInFlight() {
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the bulks being sent");
+        }
+    }
+
+    /**
+     * This method processes failures by iterating through each bulk response item
+     *
+     * @param request  the BulkRequest sent
+     * @param response the BulkResponse
+     * @param retry    receives the requests rejected because ES is
+     *                 overloaded, null to record them as failed
+     * @return true if some items were rejected because ES is overloaded
+     **/
+    private boolean processBulkResponseFailure(BulkRequest request, BulkResponse response, BulkRequest retry) {
+        boolean rejected = false;
+        int failed = 0;
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                boolean retryable = isRetryable(item.status());
+                rejected |= retryable;
+                if (retryable && retry != null) {
+                    retry.add(request.requests().get(item.getItemId()));
+                    continue;
+                }
+                failed++;
+                if (logger.isDebugEnabled()) {
+                    logger.info("Error {} occurred on index {}, type {}, id {} for {} operation "
+                            , item.getFailureMessage(), item.getIndex(), item.getType(), item.getId()
+                            , item.getOpType());
+                }
+                synchronized (urisWithESErrors) {
+                    urisWithESErrors.add(String.format("%s %s", item.getId(), item.getFailureMessage()));
+                }
+            }
+        }
+        if (failed > 0) {
+            logger.warn("There were {} failures when executing bulk : {}", failed, response.buildFailureMessage());
+        }
+        return rejected;
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private void recordFailures(BulkRequest request, String message) {
+        synchronized (urisWithESErrors) {
+            for (DocWriteRequest<?> docRequest : request.requests()) {
+                urisWithESErrors.add(String.format("%s %s", docRequest.id(), message));
+            }
+        }
+    }
+
+    public synchronized long getResourceCount() {
+        return resourceCount;
+    }
+
+    public ArrayList<String> getUrisWithESErrors() {
+        synchronized (urisWithESErrors) {
+            return new ArrayList<>(urisWithESErrors);
+        }
+    }
+}
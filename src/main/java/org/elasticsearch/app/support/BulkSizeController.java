@@ -0,0 +1,72 @@
+package org.elasticsearch.app.support;
+
+/**
+ * Decides when the bulk stage sends its pending requests: once they reach a
+ * number of actions or a payload size.
+ * <p>
+ * When adaptive, the number of actions is tuned from the completed bulks:
+ * it grows by {@link #minActions} after each bulk completed within the
+ * target latency and is halved after a slow bulk or a bulk rejected by ES,
+ * between {@link #minActions} and {@link #maxActions}. The payload size stays
+ * capped at {@link #maxBytes} so a bulk of large documents keeps below the
+ * request size limits of ES.
+ */
+public class BulkSizeController {
+
+    private final int minActions;
+    private final int maxActions;
+    private final long maxBytes;
+    private final boolean adaptive;
+    private final long targetLatencyMillis;
+
+    private volatile int actions;
+
+    /**
+     * @param minActions          smallest number of actions per bulk
+     * @param maxActions          largest number of actions per bulk, used for
+     *                            every bulk when not adaptive
+     * @param maxBytes            largest payload of a bulk, in bytes
+     * @param adaptive            whether the number of actions is tuned
+     * @param targetLatencyMillis latency above which a bulk is too slow
+     */
+    public BulkSizeController(int minActions, int maxActions, long maxBytes, boolean adaptive,
+                              long targetLatencyMillis) {
+        this.maxActions = Math.max(1, maxActions);
+        this.minActions = Math.max(1, Math.min(minActions, this.maxActions));
+        this.maxBytes = maxBytes;
+        this.adaptive = adaptive;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.actions = adaptive ? Math.max(this.minActions, this.maxActions / 4) : this.maxActions;
+    }
+
+    /**
+     * @param numberOfActions pending actions
+     * @param sizeInBytes     estimated payload of the pending actions
+     * @return true if the pending actions should be sent
+     */
+    public boolean isFull(int numberOfActions, long sizeInBytes) {
+        return numberOfActions >= actions || (maxBytes > 0 && sizeInBytes >= maxBytes);
+    }
+
+    /**
+     * Tunes the number of actions from a completed bulk.
+     *
+     * @param latencyMillis time between sending the bulk and its response
+     * @param rejected      whether ES rejected the bulk or some of its items
+     */
+    public synchronized void onBulkCompleted(long latencyMillis, boolean rejected) {
+        if (!adaptive) return;
+        if (rejected || latencyMillis > targetLatencyMillis) {
+            actions = Math.max(minActions, actions / 2);
+        } else {
+            actions = Math.min(maxActions, actions + minActions);
+        }
+    }
+
+    /**
+     * @return the current number of actions per bulk
+     */
+    public int getActions() {
+        return actions;
+    }
+}
@@ -0,0 +1,132 @@
+package org.elasticsearch.app.support;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Order independent fingerprint of harvested triples.
+ * <p>
+ * Every triple is hashed with MD5 and the hashes are summed, so the
+ * fingerprint does not depend on the order in which the endpoint returns the
+ * triples nor on how they are split among queries and pages. The number of
+ * triples and the hash of the river settings are part of the fingerprint,
+ * since the settings decide which documents are built from the triples, and
+ * so is the {@link #FORMAT_VERSION} of the documents.
+ */
+public class ContentFingerprint {
+
+    /**
+     * Version of the documents built from the triples. It must be raised
+     * whenever the same triples and settings give other documents, so that
+     * the next harvest of every river indexes them again.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final String settingsHash;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong high = new AtomicLong();
+    private final AtomicLong low = new AtomicLong();
+
+    /**
+     * @param settingsHash hash of the settings the triples are indexed with,
+     *                     see {@link #ofSettings(Map)}
+     */
+    public ContentFingerprint(String settingsHash) {
+        this.settingsHash = settingsHash;
+    }
+
+    /**
+     * Hashes river settings independently of the order of their keys.
+     *
+     * @param settings the river settings
+     * @return hex MD5 of the settings
+     */
+    public static String ofSettings(Map<String, Object> settings) {
+        try {
+            String json = new ObjectMapper()
+                    .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                    .writeValueAsString(settings);
+            return hex(md5.get().digest(json.getBytes(StandardCharsets.UTF_8)));
+        } catch (JsonProcessingException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Adds a triple. Safe to call from several threads. A triple added twice
+     * is counted twice, the callers add every harvested triple once.
+     *
+     * @param triple the triple
+     */
+    public void add(Triple triple) {
+        MessageDigest digest = md5.get();
+        update(digest, triple.getSubject());
+        update(digest, triple.getPredicate());
+        update(digest, triple.getObject());
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        high.addAndGet(hash.getLong());
+        low.addAndGet(hash.getLong());
+        count.incrementAndGet();
+    }
+
+    /**
+     * Adds all the triples of a model
+     *
+     * @param model the model
+     */
+    public void add(Model model) {
+        ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (triples.hasNext()) {
+                add(triples.next());
+            }
+        } finally {
+            triples.close();
+        }
+    }
+
+    private static void update(MessageDigest digest, Node node) {
+        digest.update(node.toString(false).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the fingerprint of the triples added so far
+     */
+    public String value() {
+        return String.format("%d-%016x%016x-%s-v%d", count.get(), high.get(), low.get(), settingsHash,
+                FORMAT_VERSION);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package org.elasticsearch.app.support;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Serializes the documents built by {@link ESNormalizer} straight to JSON.
+ * <p>
+ * Handing the document maps to {@code IndexRequest.source(Map)} makes ES walk
+ * them again through its generic XContent serialization. The writer only
+ * knows the few value types a document holds and writes them into a buffer
+ * reused by every document built on the same thread, so only the resulting
+ * bytes are allocated per document.
+ */
+public final class DocumentWriter {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    /* Buffers growing beyond this size are not kept for the next document */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> buffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(4096));
+
+    private DocumentWriter() {
+    }
+
+    /**
+     * @param document a document, from field names to values or lists of
+     *                 values
+     * @return the document as UTF-8 JSON
+     */
+    public static byte[] write(Map<String, Object> document) {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try (JsonGenerator generator = factory.createGenerator(buffer, JsonEncoding.UTF8)) {
+            writeMap(generator, document);
+        } catch (IOException e) {
+            // Not thrown by an in-memory buffer
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        if (buffer.size() > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        }
+        return bytes;
+    }
+
+    private static void writeMap(JsonGenerator generator, Map<?, ?> map) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+            writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object item : (Object[]) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Map) {
+            writeMap(generator, (Map<?, ?>) value);
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
@@ -31,299 +31,200 @@ class Pair<X, Y> {
 public class ESNormalizer {
     private Harvester harvester;
     private Resource rs;
-    private Set<Property> properties;
     private Model model;
     private boolean getPropLabel;
+    private NormalizationPlan plan;
+    private LabelIndex labels;
 
     private HashMap<String, HashMap<String, Object>> jsonMaps = new HashMap<>();
 
-    private boolean addUriForResource;
-    private Map<String, Object> normalizeProp;
-    private Map<String, Set<String>> whiteMap;
-    private Map<String, Set<String>> blackMap;
-    private Map<String, String> normalizeObj;
-    private Boolean addLanguage;
-    private String language;
-
     private final ESLogger logger = Loggers.getLogger(ESNormalizer.class);
 
-    private Set<String> rdfLanguages = new HashSet<>();
-    private Map<String, Object> normalizeMissing;
-
-
-    public void setLanguage(String language) {
-        this.language = language;
-    }
-
-    public void setNormalizeMissing(Map<String, Object> normalizeMissing) {
-        this.normalizeMissing = normalizeMissing;
-    }
-
-
-    public void setAddUriForResource(boolean addUriForResource) {
-        this.addUriForResource = addUriForResource;
-    }
-
-    public void setNormalizeProp(Map<String, Object> normalizeProp) {
-        this.normalizeProp = normalizeProp;
-    }
-
-    public void setWhiteMap(Map<String, Set<String>> whiteMap) {
-        this.whiteMap = whiteMap;
-    }
-
-    public void setBlackMap(Map<String, Set<String>> blackMap) {
-        this.blackMap = blackMap;
-    }
-
-    public void setNormalizeObj(Map<String, String> normalizeObj) {
-        this.normalizeObj = normalizeObj;
-    }
-
-    public void setAddLanguage(Boolean addLanguage) {
-        this.addLanguage = addLanguage;
-    }
+    public static final String COUNT_PREFIX = "items_count_";
+    public static final String TRANSLATIONS = "translations";
 
     public ESNormalizer() {
         jsonMaps.put("", new JSONMap());
     }
 
-    public ESNormalizer(Resource rs, Set<Property> properties, Model model, boolean getPropLabel, Harvester harvester) {
+    /**
+     * @param rs           the resource to normalize
+     * @param model        the model holding the resource
+     * @param getPropLabel whether URI values are replaced by their labels
+     * @param harvester    the harvester the resource is indexed by
+     * @param plan         the compiled normalization options of the harvest
+     * @param labels       labels of the model for the label rules of the plan
+     */
+    public ESNormalizer(Resource rs, Model model, boolean getPropLabel,
+                        Harvester harvester, NormalizationPlan plan, LabelIndex labels) {
         this();
         this.rs = rs;
-        this.properties = properties;
         this.model = model;
         this.getPropLabel = getPropLabel;
         this.harvester = harvester;
+        this.plan = plan;
+        this.labels = labels;
     }
 
     public void process() {
         //todo: return multiple terms
         addUriForResource();
 
-        for (Property prop : properties) {
-            processProperty(prop);
+        // A single pass over the statements of the resource
+        StmtIterator it = model.listStatements(rs, null, (RDFNode) null);
+        try {
+            while (it.hasNext()) {
+                Statement st = it.nextStatement();
+                NormalizationPlan.PropertyAction action = plan.action(st.getPredicate().toString());
+                if (action.isIndexed()) {
+                    processValue(action, st.getObject());
+                }
+            }
+        } finally {
+            it.close();
         }
 
         normalizeMissing();
 
-        if (jsonMaps.keySet().size() > 1)
-            addSharedPropertiesToLanguages();
+        if (plan.isNestedLanguages()) {
+            if (plan.isAddCounting())
+                addCounting();
+            if (jsonMaps.keySet().size() > 1)
+                nestLanguages();
+        } else {
+            if (jsonMaps.keySet().size() > 1)
+                addSharedPropertiesToLanguages();
+            if (plan.isAddCounting())
+                addCounting();
+        }
     }
 
-    private void addSharedPropertiesToLanguages() {
-        HashMap<String, Object> sharedPropertiesJson = jsonMaps.get("");
-        for (String lang : jsonMaps.keySet()) {
-            if (lang.equals("")) continue;
-            HashMap<String, Object> languageJson = jsonMaps.get(lang);
-            for (String prop : sharedPropertiesJson.keySet()) {
-                ArrayList<Object> temp = (ArrayList<Object>) sharedPropertiesJson.get(prop);
-                if (languageJson.containsKey(prop))
-                    temp.addAll((Collection<?>) languageJson.get(prop));
-                languageJson.put(prop, temp);
+    /**
+     * Adds an "items_count_" field with the number of values of every field,
+     * to every language variant. The values left out by maxValuesPerField
+     * are counted as well.
+     */
+    private void addCounting() {
+        for (HashMap<String, Object> json : jsonMaps.values()) {
+            String[] fields = json.keySet().toArray(new String[0]);
+            for (String field : fields) {
+                Object values = json.get(field);
+                if (values instanceof FieldValues) {
+                    json.put(COUNT_PREFIX + field, ((FieldValues) values).getCount());
+                } else if (values instanceof JoinedValues) {
+                    json.put(COUNT_PREFIX + field, ((JoinedValues) values).getCount());
+                } else if (values instanceof Collection) {
+                    json.put(COUNT_PREFIX + field, ((Collection<?>) values).size());
+                }
             }
         }
-        jsonMaps.remove("");
     }
 
-    private void normalizeMissing() {
-        for (Map.Entry<String, Object> it : normalizeMissing.entrySet()) {
-            if (!jsonMaps.get("").containsKey(it.getKey())) {
-                ArrayList<Object> res = new ArrayList<>();
-                Object miss_values = it.getValue();
-
-                if (miss_values instanceof String) {
-                    res.add((String) miss_values);
+    /**
+     * Adds the language-neutral fields to the document of every language.
+     * The language documents refer to the language-neutral values, which
+     * are never modified.
+     */
+    private void addSharedPropertiesToLanguages() {
+        HashMap<String, Object> sharedPropertiesJson = jsonMaps.remove("");
+        for (HashMap<String, Object> languageJson : jsonMaps.values()) {
+            for (Map.Entry<String, Object> shared : sharedPropertiesJson.entrySet()) {
+                Object own = languageJson.get(shared.getKey());
+                if (own instanceof FieldValues && shared.getValue() instanceof FieldValues) {
+                    languageJson.put(shared.getKey(),
+                            new JoinedValues((FieldValues) shared.getValue(), (FieldValues) own));
                 } else {
-                    if (miss_values instanceof List<?>) {
-
-                        for (String miss_value : ((List<String>) miss_values)) {
-                            res.add(miss_value);
-                        }
-                    } else if (miss_values instanceof Number) {
-                        res.add(miss_values);
-                    } else {
-                        res.add(miss_values.toString());
-                    }
+                    languageJson.put(shared.getKey(), shared.getValue());
                 }
-//                if (res.size() == 1)
-//                    jsonMaps.get("").put(it.getKey(), res.get(0));
-//                else
-                jsonMaps.get("").put(it.getKey(), res);
             }
         }
     }
 
-    private String getPrefLbl(String iri, String prefLblIri) {
-        try {
-            Statement requiredProperty = model.getRequiredProperty(model.getResource(iri), model.getProperty(prefLblIri));
-            RDFNode object = requiredProperty.getObject();
-            if (object.isLiteral()) return object.asLiteral().getLexicalForm();
-        } catch (Exception e) {
-            logger.warn("Could not find {} for {}", prefLblIri, iri);
+    /**
+     * Keeps a single document with the language-neutral fields, the list of
+     * "language"s and the fields of every language under
+     * "translations.&lt;language&gt;".
+     */
+    private void nestLanguages() {
+        HashMap<String, Object> json = jsonMaps.get("");
+        FieldValues languages = new FieldValues(0);
+        Map<String, Object> translations = new TreeMap<>();
+        Iterator<Map.Entry<String, HashMap<String, Object>>> it = jsonMaps.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, HashMap<String, Object>> language = it.next();
+            if (language.getKey().equals("")) continue;
+            language.getValue().remove("language");
+            translations.put(language.getKey(), language.getValue());
+            it.remove();
         }
-        return iri;
+        languages.addAll(translations.keySet());
+        json.put("language", languages);
+        json.put(TRANSLATIONS, translations);
     }
 
-    private void processProperty(Property prop) {
-
-        NodeIterator niter = model.listObjectsOfProperty(rs, prop);
-        String property = prop.toString();
-        ArrayList<Object> results;
-        String lang;
-
-        Pair<Object, String> currValue;
-        //hasWorkflowState
-        while (niter.hasNext()) {
-            results = new ArrayList<>();
-            RDFNode node = niter.next();
-            currValue = getStringForResult(node, getPropLabel);
-            lang = currValue.getLanguage();
-            String currValueString = currValue.getValue().toString();
-
-            //todo: do separate config var for iris of predicates where object is to be changed to label
-            if (property.equals("http://www.w3.org/1999/02/22-rdf-syntax-ns#type") && currValueString.startsWith("https://slovník.gov.cz/základní/pojem/")) {
-//                currValue = new Pair<>(getLabelForUri(currValue.getValue()), currValue.getLanguage());
-                currValue = new Pair<>(getPrefLbl(currValueString, "http://www.w3.org/2004/02/skos/core#prefLabel"), currValue.getLanguage());
-            } else if (property.equals("http://www.w3.org/2004/02/skos/core#inScheme"))
-                currValue = new Pair<>(getPrefLbl(currValueString, "http://purl.org/dc/terms/title"), currValue.getLanguage());
-            rdfLanguages.add(lang);
-            if (!jsonMaps.containsKey(lang))
-                jsonMaps.put(lang, new JSONMap());
-            if (!lang.equals(""))
-                jsonMaps.get(lang).put("language", lang);
-
-            Object shortValue = currValue.getValue();
-
-            int currLen = currValueString.length();
-            // Unquote string
-            /*if (currLen > 1)
-                shortValue = currValue.substring(1, currLen - 1);*/
-
-            // If either whiteMap does contains shortValue
-            // or blackMap contains the value
-            // skip adding it to the index
-            boolean whiteMapCond = whiteMap.containsKey(property)
-                    && !whiteMap.get(property).contains(shortValue);
-            boolean blackMapCond = blackMap.containsKey(property)
-                    && blackMap.get(property).contains(shortValue);
-
-            if (whiteMapCond || blackMapCond) {
-                continue;
-            }
-            if (normalizeObj.containsKey(shortValue)) {
-                if (!results.contains(normalizeObj.get(shortValue))) {
-                    results.add(normalizeObj.get(shortValue));
-                }
-            } else {
-                if (!results.contains(shortValue)) {
-                    results.add(shortValue);
-                }
+    private void normalizeMissing() {
+        HashMap<String, Object> json = jsonMaps.get("");
+        for (Map.Entry<String, List<Object>> it : plan.getMissing().entrySet()) {
+            if (!json.containsKey(it.getKey())) {
+                FieldValues values = newValues();
+                values.addAll(it.getValue());
+                json.put(it.getKey(), values);
             }
+        }
+    }
 
+    private void processValue(NormalizationPlan.PropertyAction action, RDFNode node) {
+        Pair<Object, String> currValue = getStringForResult(node, getPropLabel);
+        String lang = currValue.getLanguage();
+        Object value = currValue.getValue();
 
-            // Do not index empty properties
-            if (!results.isEmpty()) {
-
-                if (normalizeProp.containsKey(property)) {
-                    Object norm_property = normalizeProp.get(property);
-                    if (norm_property instanceof String) {
-                        property = norm_property.toString();
-
-                        if (jsonMaps.get(lang).containsKey(property)) {
-                            Object temp = jsonMaps.get(lang).get(property);
-                            if (temp instanceof List) {
-                                results.addAll((List) temp);
-//TODO: commented results.get(0)
-//                                if (results.size() == 1)
-//                                    jsonMaps.get(lang).put(property, results.get(0));
-//                                else
-                                jsonMaps.get(lang).put(property, results);
-                            } else {
-                                jsonMaps.get(lang).put(property, results);
-                            }
-                        } else {
-//                            if (results.size() == 1)
-//                                jsonMaps.get(lang).put(property, results.get(0));
-//                            else
-                            jsonMaps.get(lang).put(property, results);
-                        }
-                    } else {
-
-                        if (norm_property instanceof List<?>) {
-
-                            for (String norm_prop : ((List<String>) norm_property)) {
-
-                                //TODO:
-                                if (jsonMaps.get(lang).containsKey(norm_prop)) {
-                                    Object temp = jsonMaps.get(lang).get(norm_prop);
-                                    if (temp instanceof List) {
-                                        results.addAll((List) temp);
-//                                        if (results.size() == 1)
-//                                            jsonMaps.get(lang).put(norm_prop, results.get(0));
-//                                        else
-                                        jsonMaps.get(lang).put(norm_prop, results);
-                                    } else {
-                                        results.add(temp);
-                                        jsonMaps.get(lang).put(norm_prop, results);
-                                    }
-                                } else {
-//                                    if (results.size() == 1)
-//                                        jsonMaps.get(lang).put(norm_prop, results.get(0));
-//                                    else
-                                    jsonMaps.get(lang).put(norm_prop, results);
-                                }
-                            }
-
-                        } else {
-                            property = norm_property.toString();
-
-                            if (jsonMaps.get(lang).containsKey(property)) {
-                                Object temp = jsonMaps.get(lang).get(property);
-                                //TODO:
-                                if (temp instanceof List) {
-                                    //((List) temp).addAll(results);
-//                                    if (results.size() == 1)
-//                                        jsonMaps.get(lang).put(property, results.get(0));
-//                                    else
-                                    jsonMaps.get(lang).put(property, results.toArray());
-                                } else {
-//                                    if (results.size() == 1)
-//                                        jsonMaps.get(lang).put(property, results.get(0));
-//                                    else
-                                    jsonMaps.get(lang).put(property, results);
-
-                                }
-                                //jsonMaps.get(property).addAll(results);
-                            } else {
-//                                if (results.size() == 1)
-//                                    jsonMaps.get(lang).put(property, results.get(0));
-//                                else
-                                jsonMaps.get(lang).put(property, results);
-
-                            }
-                            logger.error("Normalizer error:", norm_property);
-                        }
-                    }
-                } else {
-                    if (jsonMaps.get(lang).containsKey(property))
-                        results.addAll((Collection<?>) jsonMaps.get(lang).get(property));
-                    jsonMaps.get(lang).put(property, results);
-                }
-            }
+        NormalizationPlan.LabelRule labelRule = action.getLabelRule();
+        if (labelRule != null && labelRule.matches(value.toString())) {
+            String label = labels.get(value.toString(), labelRule.getLabelProperty());
+            if (label != null) value = label;
+        }
+
+        HashMap<String, Object> json = jsonMaps.get(lang);
+        if (json == null) {
+            json = new JSONMap();
+            jsonMaps.put(lang, json);
+        }
+        if (!lang.equals(""))
+            json.put("language", lang);
+
+        // Skip the values left out by the whiteMap or the blackMap
+        if (!action.accepts(value)) return;
 
+        value = plan.rewrite(value);
+        for (String target : action.getTargets()) {
+            addValue(json, target, value);
         }
     }
 
+    private void addValue(HashMap<String, Object> json, String field, Object value) {
+        Object current = json.get(field);
+        if (current instanceof FieldValues) {
+            FieldValues values = (FieldValues) current;
+            values.add(value);
+            if (values.isTruncated() && logger.isDebugEnabled()) {
+                logger.debug("Values of {} for {} exceed the cap, dropping {}", field, rs, value);
+            }
+        } else {
+            FieldValues values = newValues();
+            values.add(value);
+            json.put(field, values);
+        }
+    }
+
+    private FieldValues newValues() {
+        return new FieldValues(plan.getMaxValuesPerField());
+    }
+
     private void addUriForResource() {
-        ArrayList<Object> results = new ArrayList<Object>();
-        if (addUriForResource) {
+        if (plan.isAddUriForResource()) {
+            FieldValues results = newValues();
             results.add(rs.toString());
-//            if (results.size() == 1)
-//                jsonMaps.get("").put("about", results.get(0));
-//            else
             jsonMaps.get("").put("about", results);
-
         }
     }
 
@@ -333,63 +234,29 @@ public class ESNormalizer {
     }
 
     /**
-     * Builds a String result for Elastic Search from an RDFNode
+     * Builds the value indexed for an RDFNode
      *
-     * @param node An RDFNode representing the value of a property for a given
-     *             resource
-     * @return If the RDFNode has a Literal value, among Boolean, Byte, Double,
-     * Float, Integer Long, Short, this value is returned, converted to String
-     * <p>If the RDFNode has a String Literal value, this value will be
-     * returned, surrounded by double quotes </p>
-     * <p>If the RDFNode has a Resource value (URI) and toDescribeURIs is set
-     * to true, the value of @getLabelForUri for the resource is returned,
-     * surrounded by double quotes.</p>
-     * Otherwise, the URI will be returned
+     * @param node         An RDFNode representing the value of a property for
+     *                     a given resource
+     * @param getNodeLabel unused, the URIs are replaced by their labels
+     *                     through the label rules of the plan
+     * @return the value and its language. If the RDFNode has a Literal value,
+     * the value given by {@link LiteralConverter#convert(Literal)}: numbers
+     * and booleans as they are, dates in ISO-8601 and other literals
+     * sanitized, with the language of the literal. If the RDFNode is a
+     * Resource, its URI, or its blank node label when it has none, with no
+     * language.
      */
     private Pair<Object, String> getStringForResult(RDFNode node, boolean getNodeLabel) {
-        String result = "";
-        Pair<Object, String> res = new Pair<>("", "");
-        boolean quote = false;
-
         if (node.isLiteral()) {
             Literal literal = node.asLiteral();
-            Object literalValue = literal.getValue();
-
-            if (literal.getDatatype() == null || literal.getDatatype().getJavaClass() == null) {
-                result = EEASettings.parseForJson(
-                        literal.getLexicalForm());
-                quote = true;
-            } else {
-                Class<?> literalJavaClass = literal.getDatatype().getJavaClass();
-
-                boolean BoolOrNumber = literalJavaClass.getName().equals(Boolean.class.getName())
-                        || Number.class.isAssignableFrom(literalJavaClass);
-
-                if (BoolOrNumber) {
-                    return new Pair<>(literalValue, literal.getLanguage());
-                } else {
-                    result = EEASettings.parseForJson(
-                            literal.getLexicalForm());
-                    quote = true;
-                }
-            }
-            res = new Pair<>(result, literal.getLanguage());
-        } else if (node.isResource()) {
-            result = node.asResource().getURI();
-            if (getNodeLabel) {
-                //TODO: optimize
-//                result = getLabelForUri(result);
-            }
-            if (Objects.isNull(result))
-                result = node.asResource().toString();
-            quote = true;
-            res = new Pair<>(result, "");
+            return new Pair<>(LiteralConverter.convert(literal), literal.getLanguage());
         }
-        //TODO: ?
-        if (quote) {
-            //result = "\"" + result + "\"";
+        if (node.isResource()) {
+            String uri = node.asResource().getURI();
+            return new Pair<>(Objects.isNull(uri) ? node.asResource().toString() : uri, "");
         }
-        return res;
+        return new Pair<>("", "");
     }
 
     /**
@@ -410,8 +277,9 @@ public class ESNormalizer {
     private String getLabelForUri(String uri) {
         String result;
 
-        if (harvester.getUriLabelCache().containsKey(uri)) {
-            return harvester.getUriLabelCache().get(uri);
+        String cached = harvester.getUriLabelCache().get(uri);
+        if (cached != null) {
+            return cached;
         }
 
         for (String prop : harvester.getUriDescriptionList()) {
@@ -420,37 +288,31 @@ public class ESNormalizer {
 
             try {
                 Query query = QueryFactory.create(innerQuery);
-                QueryExecution qExec = QueryExecutionFactory.sparqlService(
-                        harvester.getRdfEndpoint(),
-                        query);
-                int retrycount = 0;
-                while (retrycount++ < 5) {
-
-                    //TODO : try finally?
+                result = EndpointGuard.of(harvester.getRdfEndpoint()).call(() -> {
+                    QueryExecution qExec = SparqlHttpClient.configure(
+                            QueryExecutionFactory.createServiceRequest(
+                                    harvester.getRdfEndpoint(),
+                                    query));
                     try {
                         ResultSet results = qExec.execSelect();
-
-                        if (results.hasNext()) {
-                            QuerySolution sol = results.nextSolution();
-                            result = EEASettings.parseForJson(
-                                    sol.getLiteral("r").getLexicalForm());
-                            if (!result.isEmpty()) {
-                                harvester.putToUriLabelCache(uri, result);
-                                return result;
-                            }
-                        } else {
-                            break;
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Could not get label for uri {}. Retrying {}/5.",
-                                uri, retrycount);
+                        if (!results.hasNext()) return "";
+                        RDFNode label = results.nextSolution().get("r");
+                        if (label == null || !label.isLiteral()) return "";
+                        return EEASettings.parseForJson(
+                                label.asLiteral().getLexicalForm());
                     } finally {
                         qExec.close();
                     }
+                });
+                if (!result.isEmpty()) {
+                    harvester.putToUriLabelCache(uri, result);
+                    return result;
                 }
             } catch (QueryParseException qpe) {
                 logger.error("Exception for query {}. The label cannot be obtained",
                         innerQuery);
+            } catch (RuntimeException e) {
+                logger.warn("Could not get label for uri {}: {}", uri, e.getLocalizedMessage());
             }
         }
         return uri;
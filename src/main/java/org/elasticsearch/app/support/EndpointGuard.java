@@ -0,0 +1,285 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.jena.atlas.web.HttpException;
+import org.elasticsearch.app.EEASettings;
+import org.elasticsearch.app.api.server.exceptions.EndpointUnavailable;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Guards the calls to one SPARQL endpoint, shared by all the harvests of the
+ * endpoint.
+ * <p>
+ * Failed calls are retried after an exponential backoff with full jitter.
+ * The outcomes of the last {@link EEASettings#CIRCUIT_WINDOW} calls are
+ * tracked; when too many of them failed, the circuit opens and calls fail
+ * immediately with {@link EndpointUnavailable} until the open period is over.
+ * Then a single probe, an ASK query with a short timeout, is sent: if the
+ * endpoint answers the circuit closes, otherwise it opens again for twice as
+ * long. The other calls fail at once while the probe runs.
+ * <p>
+ * Only server side errors (HTTP 5xx and 429) and I/O errors, such as refused
+ * connections and timeouts, are retried and counted as failures. Any other
+ * error is rethrown at once.
+ */
+public class EndpointGuard {
+
+    private static final ESLogger logger = Loggers.getLogger(EndpointGuard.class);
+
+    private static final ConcurrentHashMap<String, EndpointGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * A call to the endpoint
+     */
+    public interface Call<T> {
+        T run();
+    }
+
+    private final String endpoint;
+    private final int retries;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final long openMillis;
+    private final Call<?> probe;
+
+    /* Outcomes of the last calls, true for failures */
+    private final boolean[] outcomes = new boolean[EEASettings.CIRCUIT_WINDOW];
+    private int calls = 0;
+    private int failures = 0;
+    private int consecutiveFailures = 0;
+    private double latencyMillis = 0;
+
+    private long openUntil = 0;
+    private long currentOpenMillis;
+    private boolean trialRunning = false;
+
+    EndpointGuard(String endpoint, int retries, long backoffMillis, long maxBackoffMillis, long openMillis,
+                  Call<?> probe) {
+        this.endpoint = endpoint;
+        this.retries = retries;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.openMillis = openMillis;
+        this.currentOpenMillis = openMillis;
+        this.probe = probe;
+    }
+
+    /**
+     * @param endpoint URL of the endpoint
+     * @return the guard shared by all the calls to the endpoint
+     */
+    public static EndpointGuard of(String endpoint) {
+        return guards.computeIfAbsent(endpoint, e -> new EndpointGuard(e,
+                EEASettings.SPARQL_RETRIES,
+                EEASettings.SPARQL_BACKOFF_MILLIS,
+                EEASettings.SPARQL_MAX_BACKOFF_MILLIS,
+                EEASettings.CIRCUIT_OPEN_MILLIS,
+                () -> ask(e)));
+    }
+
+    /**
+     * Probes an endpoint with an ASK query, with a short timeout.
+     *
+     * @param endpoint URL of the endpoint
+     * @return the answer of the endpoint
+     */
+    private static boolean ask(String endpoint) {
+        QueryEngineHTTP qExec = SparqlHttpClient.configure(
+                QueryExecutionFactory.createServiceRequest(endpoint, QueryFactory.create("ASK {}")));
+        qExec.setTimeout(EEASettings.CIRCUIT_PROBE_TIMEOUT_MILLIS, EEASettings.CIRCUIT_PROBE_TIMEOUT_MILLIS);
+        try {
+            return qExec.execAsk();
+        } finally {
+            qExec.close();
+        }
+    }
+
+    /**
+     * Executes a call, retrying it while it fails with a retriable error.
+     *
+     * @param call    the call, executed once per attempt
+     * @param stopped tells whether the caller gave up, no attempt is made then
+     * @return result of the call
+     * @throws EndpointUnavailable if the circuit is open
+     */
+    public <T> T call(Call<T> call, BooleanSupplier stopped) {
+        int attempt = 0;
+        while (true) {
+            if (acquire()) {
+                probe();
+            }
+            long start = System.currentTimeMillis();
+            try {
+                T result = call.run();
+                onSuccess(System.currentTimeMillis() - start, false);
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetriable(e)) throw e;
+                onFailure(false);
+                if (attempt >= retries || stopped.getAsBoolean()) throw e;
+                long delay = backoff(attempt++);
+                logger.warn("Query to [{}] failed: [{}]. Retrying {}/{} in {} ms.",
+                        endpoint, e.getLocalizedMessage(), attempt, retries, delay);
+                if (!sleep(delay)) throw e;
+            }
+        }
+    }
+
+    /**
+     * Executes a call, retrying it while it fails with a retriable error.
+     *
+     * @param call the call, executed once per attempt
+     * @return result of the call
+     * @throws EndpointUnavailable if the circuit is open
+     */
+    public <T> T call(Call<T> call) {
+        return call(call, () -> false);
+    }
+
+    /**
+     * @return how long to wait before calling the endpoint again after a
+     * failure: until the circuit closes or the backoff of the consecutive
+     * failures is over
+     */
+    public synchronized long retryDelayMillis() {
+        long now = System.currentTimeMillis();
+        if (openUntil > now) return openUntil - now;
+        return consecutiveFailures == 0 ? 0 : backoff(consecutiveFailures - 1);
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil > 0;
+    }
+
+    public synchronized double getErrorRate() {
+        return calls == 0 ? 0.0 : (double) failures / Math.min(calls, outcomes.length);
+    }
+
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * Checks whether a failed call may succeed when retried.
+     *
+     * @param e the failure
+     * @return true for HTTP 5xx and 429 errors and for failures caused by an
+     * I/O error
+     */
+    static boolean isRetriable(RuntimeException e) {
+        int code = -1;
+        if (e instanceof QueryExceptionHTTP) {
+            code = ((QueryExceptionHTTP) e).getResponseCode();
+        } else if (e instanceof HttpException) {
+            code = ((HttpException) e).getResponseCode();
+        }
+        if (code >= 500 || code == 429) return true;
+        if (code >= 400) return false;
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends the probe of a half open circuit, which closes the circuit if the
+     * endpoint answers and opens it again otherwise.
+     *
+     * @throws EndpointUnavailable if the endpoint did not answer
+     */
+    private void probe() {
+        long start = System.currentTimeMillis();
+        try {
+            probe.run();
+        } catch (RuntimeException e) {
+            if (isRetriable(e)) {
+                onFailure(true);
+                throw new EndpointUnavailable(String.format("Endpoint %s is still unavailable: %s",
+                        endpoint, e.getLocalizedMessage()), e);
+            }
+            // The endpoint answered, even if it rejected the probe
+        }
+        onSuccess(System.currentTimeMillis() - start, true);
+    }
+
+    /**
+     * @return true if the caller has to send the probe of a half open circuit
+     */
+    private synchronized boolean acquire() {
+        if (openUntil == 0) return false;
+        if (System.currentTimeMillis() < openUntil || trialRunning) {
+            throw new EndpointUnavailable(String.format(
+                    "Endpoint %s is unavailable, %.0f%% of the last queries failed",
+                    endpoint, getErrorRate() * 100));
+        }
+        trialRunning = true;
+        return true;
+    }
+
+    private synchronized void onSuccess(long millis, boolean trial) {
+        latencyMillis = latencyMillis == 0 ? millis : 0.8 * latencyMillis + 0.2 * millis;
+        record(false);
+        consecutiveFailures = 0;
+        if (trial) {
+            trialRunning = false;
+            openUntil = 0;
+            currentOpenMillis = openMillis;
+            logger.info("Endpoint [{}] is available again", endpoint);
+        }
+    }
+
+    private synchronized void onFailure(boolean trial) {
+        record(true);
+        consecutiveFailures++;
+        if (trial) {
+            trialRunning = false;
+            currentOpenMillis = Math.min(currentOpenMillis * 2, EEASettings.CIRCUIT_MAX_OPEN_MILLIS);
+            open();
+        } else if (openUntil == 0 && (consecutiveFailures >= EEASettings.CIRCUIT_CONSECUTIVE_FAILURES
+                || (calls >= EEASettings.CIRCUIT_MIN_CALLS
+                && getErrorRate() * 100 >= EEASettings.CIRCUIT_ERROR_RATE_PERCENT))) {
+            open();
+        }
+    }
+
+    private void open() {
+        openUntil = System.currentTimeMillis() + currentOpenMillis;
+        logger.warn("Endpoint [{}] is failing ({}% errors, {} ms average latency), " +
+                        "no queries are sent to it for {} s",
+                endpoint, Math.round(getErrorRate() * 100), Math.round(latencyMillis),
+                currentOpenMillis / 1000);
+    }
+
+    private void record(boolean failed) {
+        int slot = calls % outcomes.length;
+        if (calls >= outcomes.length && outcomes[slot]) failures--;
+        outcomes[slot] = failed;
+        if (failed) failures++;
+        calls++;
+    }
+
+    private long backoff(int attempt) {
+        long cap = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
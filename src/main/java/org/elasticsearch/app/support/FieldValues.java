@@ -0,0 +1,92 @@
+package org.elasticsearch.app.support;
+
+import java.util.AbstractCollection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Values of a document field, without duplicates and in the order they were
+ * added. Adding a value is a hash lookup, whatever the number of values.
+ * <p>
+ * The number of values can be capped, the values added once the cap is
+ * reached are dropped. The dropped values are still counted, so the
+ * {@link #getCount()} of a field is the same with or without the cap.
+ */
+public class FieldValues extends AbstractCollection<Object> {
+
+    private final LinkedHashSet<Object> values = new LinkedHashSet<>();
+    private final int maxValues;
+    private boolean truncated = false;
+    /* Values dropped because of the cap, kept to be counted once */
+    private Set<Object> dropped = null;
+
+    /**
+     * @param maxValues maximum number of values, 0 for no limit
+     */
+    public FieldValues(int maxValues) {
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * @param value a value
+     * @return false if the value was already there or the cap is reached
+     */
+    @Override
+    public boolean add(Object value) {
+        if (maxValues > 0 && values.size() >= maxValues) {
+            if (!values.contains(value)) {
+                truncated = true;
+                if (dropped == null) dropped = new HashSet<>();
+                dropped.add(value);
+            }
+            return false;
+        }
+        return values.add(value);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return values.contains(value);
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return values.iterator();
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return true if values were dropped because of the cap
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of distinct values added, the dropped ones included
+     */
+    public int getCount() {
+        return values.size() + (dropped == null ? 0 : dropped.size());
+    }
+
+    /**
+     * @param value a value
+     * @return true if the value was added, kept or dropped
+     */
+    boolean wasAdded(Object value) {
+        return values.contains(value) || (dropped != null && dropped.contains(value));
+    }
+
+    /**
+     * @return the values dropped because of the cap
+     */
+    Set<Object> getDropped() {
+        return dropped == null ? new HashSet<>() : dropped;
+    }
+}
@@ -0,0 +1,146 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.indices.flush.FlushRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.admin.indices.template.delete.DeleteIndexTemplateRequest;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.PutIndexTemplateRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Index settings speeding up the build of a temporary index: no refresh, no
+ * replicas and an asynchronous translog. The settings the index had before
+ * are restored once it is built, before it replaces the production index.
+ * <p>
+ * A temporary index cloned from the production index gets the build settings
+ * at once. Otherwise the index is created by the first bulk, so the build
+ * settings go into an index template matching only its name, which is
+ * removed when the settings are restored.
+ */
+public class IndexBuildProfile {
+
+    private final ESLogger logger = Loggers.getLogger(IndexBuildProfile.class);
+
+    public static final String REFRESH_INTERVAL = "index.refresh_interval";
+    public static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+    public static final String TRANSLOG_DURABILITY = "index.translog.durability";
+
+    /**
+     * Settings applied while the index is built
+     */
+    public static final Settings BUILD_SETTINGS = Settings.builder()
+            .put(REFRESH_INTERVAL, "-1")
+            .put(NUMBER_OF_REPLICAS, 0)
+            .put(TRANSLOG_DURABILITY, "async")
+            .build();
+
+    /* Order above the templates of the cluster, the build settings must win */
+    private static final int TEMPLATE_ORDER = 1000;
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final String templateName;
+
+    /* Settings of the index before the build, a missing one is reset to its default */
+    private Settings productionSettings = Settings.EMPTY;
+    private boolean templateInstalled = false;
+
+    /**
+     * @param client ES client
+     * @param index  name of the temporary index
+     */
+    public IndexBuildProfile(RestHighLevelClient client, String index) {
+        this.client = client;
+        this.index = index;
+        this.templateName = index + "-build-settings";
+    }
+
+    /**
+     * Applies the build settings to the index if it exists, or to the index
+     * created by the first bulk otherwise.
+     *
+     * @throws IOException if ES could not be reached
+     */
+    public void apply() throws IOException {
+        if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+            GetSettingsRequest getSettings = new GetSettingsRequest().indices(index)
+                    .names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS, TRANSLOG_DURABILITY);
+            GetSettingsResponse response = client.indices().getSettings(getSettings, RequestOptions.DEFAULT);
+            Settings current = response.getIndexToSettings().get(index);
+            productionSettings = current == null ? Settings.EMPTY : current;
+            client.indices().putSettings(new UpdateSettingsRequest(index).settings(BUILD_SETTINGS),
+                    RequestOptions.DEFAULT);
+            logger.info("Applied the build settings to index {}", index);
+        } else {
+            productionSettings = Settings.EMPTY;
+            PutIndexTemplateRequest template = new PutIndexTemplateRequest(templateName)
+                    .patterns(Collections.singletonList(index))
+                    .order(TEMPLATE_ORDER)
+                    .settings(BUILD_SETTINGS);
+            client.indices().putTemplate(template, RequestOptions.DEFAULT);
+            templateInstalled = true;
+            logger.info("Installed template {} with the build settings of index {}", templateName, index);
+        }
+    }
+
+    /**
+     * Restores the settings of the index before the build, flushes it and
+     * waits for it to be yellow, i.e. for its primaries to be active. The
+     * replicas are not waited for, a single node cluster never allocates them.
+     *
+     * @param timeout how long to wait for the index to be yellow
+     * @return false if the index did not get yellow within the timeout
+     * @throws IOException if ES could not be reached
+     */
+    public boolean restore(TimeValue timeout) throws IOException {
+        discard();
+        Settings.Builder restored = Settings.builder();
+        for (String key : BUILD_SETTINGS.keySet()) {
+            String value = productionSettings.get(key);
+            if (value == null) {
+                restored.putNull(key);
+            } else {
+                restored.put(key, value);
+            }
+        }
+        client.indices().putSettings(new UpdateSettingsRequest(index).settings(restored.build()),
+                RequestOptions.DEFAULT);
+        // Commits the documents not yet in a segment, the clone only copies segments
+        client.indices().flush(new FlushRequest(index), RequestOptions.DEFAULT);
+
+        ClusterHealthRequest health = new ClusterHealthRequest(index).waitForYellowStatus().timeout(timeout);
+        ClusterHealthResponse response = client.cluster().health(health, RequestOptions.DEFAULT);
+        return !response.isTimedOut();
+    }
+
+    /**
+     * Removes the template of the build settings, if any.
+     */
+    public void discard() {
+        if (!templateInstalled) return;
+        try {
+            client.indices().deleteTemplate(new DeleteIndexTemplateRequest(templateName), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            logger.error("Could not delete template {}: {}", templateName, e.getMessage());
+        } catch (ElasticsearchException e) {
+            if (e.status() != RestStatus.NOT_FOUND) {
+                logger.error("Could not delete template {}: {}", templateName, e.getMessage());
+            }
+        }
+        templateInstalled = false;
+    }
+}
@@ -0,0 +1,198 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.action.admin.indices.template.delete.DeleteIndexTemplateRequest;
+import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequest;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Explicit mapping of the documents of a river, generated from its
+ * normalization settings.
+ * <p>
+ * Every field known from the settings is declared: the targets of normProp,
+ * the properties of a white proplist, the fields of normMissing, "about",
+ * "language" and the items_count_ fields. A field gets the type hinted in
+ * fieldTypes, the default string type otherwise, which the strings of the
+ * fields added dynamically get as well. The "dynamic" policy decides what
+ * happens to the fields not declared.
+ * <p>
+ * The mapping is added to the index if it exists. Otherwise the index is
+ * created by the first bulk, so the mapping goes into an index template
+ * matching only its name, removed once the index is built.
+ */
+public class IndexMapping {
+
+    private final ESLogger logger = Loggers.getLogger(IndexMapping.class);
+
+    /**
+     * Type hint for the default ES mapping of strings: text with a keyword
+     * subfield
+     */
+    public static final String TEXT_KEYWORD = "text_keyword";
+
+    /* Order above the templates of the cluster, the mapping must win */
+    private static final int TEMPLATE_ORDER = 1000;
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final String type;
+    private final String templateName;
+
+    private boolean templateInstalled = false;
+
+    /**
+     * @param client ES client
+     * @param index  name of the index
+     * @param type   type of the documents
+     */
+    public IndexMapping(RestHighLevelClient client, String index, String type) {
+        this.client = client;
+        this.index = index;
+        this.type = type;
+        this.templateName = index + "-mapping";
+    }
+
+    /**
+     * Generates the mapping of the documents.
+     *
+     * @param plan              normalization plan of the river
+     * @param fieldTypes        type hints by field name, a hint being a type
+     *                          name, {@link #TEXT_KEYWORD} or a field mapping
+     * @param defaultStringType type hint of the fields without one
+     * @param dynamic           "true", "false" or "strict"
+     * @return the mapping
+     */
+    public static Map<String, Object> build(NormalizationPlan plan, Map<String, Object> fieldTypes,
+                                            String defaultStringType, String dynamic) {
+        Map<String, Object> hints = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> hint : fieldTypes.entrySet()) {
+            hints.put(plan.getPrefixes().compact(hint.getKey()), hint.getValue());
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        if (plan.isAddUriForResource()) {
+            addField(properties, "about", fieldMapping(hints.getOrDefault("about", defaultStringType)));
+        }
+        addField(properties, "language", fieldMapping(hints.getOrDefault("language", defaultStringType)));
+        for (String field : plan.getFieldNames()) {
+            addField(properties, field, fieldMapping(hints.getOrDefault(field, defaultStringType)));
+            if (plan.isAddCounting()) {
+                String countField = ESNormalizer.COUNT_PREFIX + field;
+                addField(properties, countField, fieldMapping(hints.getOrDefault(countField, "long")));
+            }
+        }
+        for (Map.Entry<String, Object> hint : hints.entrySet()) {
+            addField(properties, hint.getKey(), fieldMapping(hint.getValue()));
+        }
+        if (plan.isNestedLanguages()) {
+            // The languages are only known from the documents
+            Map<String, Object> translations = new LinkedHashMap<>();
+            translations.put("type", "object");
+            translations.put("dynamic", true);
+            properties.put(ESNormalizer.TRANSLATIONS, translations);
+        }
+
+        Map<String, Object> strings = new LinkedHashMap<>();
+        strings.put("match_mapping_type", "string");
+        strings.put("mapping", fieldMapping(defaultStringType));
+
+        Map<String, Object> mapping = new LinkedHashMap<>();
+        mapping.put("dynamic", dynamic);
+        mapping.put("dynamic_templates",
+                Collections.singletonList(Collections.singletonMap("strings", strings)));
+        mapping.put("properties", properties);
+        return mapping;
+    }
+
+    /**
+     * @param hint a type name, {@link #TEXT_KEYWORD} or a field mapping
+     * @return the mapping of a field
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> fieldMapping(Object hint) {
+        if (hint instanceof Map) return (Map<String, Object>) hint;
+        Map<String, Object> mapping = new LinkedHashMap<>();
+        if (TEXT_KEYWORD.equals(hint.toString())) {
+            Map<String, Object> keyword = new LinkedHashMap<>();
+            keyword.put("type", "keyword");
+            keyword.put("ignore_above", 256);
+            mapping.put("type", "text");
+            mapping.put("fields", Collections.singletonMap("keyword", keyword));
+        } else {
+            mapping.put("type", hint.toString());
+        }
+        return mapping;
+    }
+
+    /**
+     * Declares a field. A field name holding dots is an object path for ES,
+     * its objects are declared as well.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addField(Map<String, Object> properties, String field, Map<String, Object> mapping) {
+        String[] path = field.split("\\.");
+        Map<String, Object> current = properties;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object object = current.get(path[i]);
+            if (!(object instanceof Map) || !((Map<String, Object>) object).containsKey("properties")) {
+                Map<String, Object> objectMapping = new LinkedHashMap<>();
+                objectMapping.put("properties", new LinkedHashMap<String, Object>());
+                current.put(path[i], objectMapping);
+                object = objectMapping;
+            }
+            current = (Map<String, Object>) ((Map<String, Object>) object).get("properties");
+        }
+        current.put(path[path.length - 1], mapping);
+    }
+
+    /**
+     * Adds the mapping to the index if it exists, or to the index created by
+     * the first bulk otherwise.
+     *
+     * @param mapping the mapping of the documents
+     * @throws IOException if ES could not be reached
+     */
+    public void install(Map<String, Object> mapping) throws IOException {
+        if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+            PutMappingRequest putMapping = new PutMappingRequest(index).type(type).source(mapping);
+            client.indices().putMapping(putMapping, RequestOptions.DEFAULT);
+            logger.info("Updated the mapping of index {}", index);
+        } else {
+            PutIndexTemplateRequest template = new PutIndexTemplateRequest(templateName)
+                    .patterns(Collections.singletonList(index))
+                    .order(TEMPLATE_ORDER)
+                    .mapping(type, mapping);
+            client.indices().putTemplate(template, RequestOptions.DEFAULT);
+            templateInstalled = true;
+            logger.info("Installed template {} with the mapping of index {}", templateName, index);
+        }
+    }
+
+    /**
+     * Removes the template of the mapping, if any.
+     */
+    public void discard() {
+        if (!templateInstalled) return;
+        try {
+            client.indices().deleteTemplate(new DeleteIndexTemplateRequest(templateName), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            logger.error("Could not delete template {}: {}", templateName, e.getMessage());
+        } catch (ElasticsearchException e) {
+            if (e.status() != RestStatus.NOT_FOUND) {
+                logger.error("Could not delete template {}: {}", templateName, e.getMessage());
+            }
+        }
+        templateInstalled = false;
+    }
+}
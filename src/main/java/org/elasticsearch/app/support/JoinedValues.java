@@ -0,0 +1,89 @@
+package org.elasticsearch.app.support;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of the language-neutral values of a field followed by the
+ * values of one language, without duplicates. The language documents of a
+ * resource share the language-neutral values instead of copying them.
+ */
+public class JoinedValues extends AbstractCollection<Object> {
+
+    private final FieldValues shared;
+    private final FieldValues own;
+
+    /**
+     * @param shared the language-neutral values
+     * @param own    the values of the language
+     */
+    public JoinedValues(FieldValues shared, FieldValues own) {
+        this.shared = shared;
+        this.own = own;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private final Iterator<Object> sharedIt = shared.iterator();
+            private final Iterator<Object> ownIt = own.iterator();
+            private Object next;
+            private boolean hasNext = advance();
+
+            private boolean advance() {
+                if (sharedIt.hasNext()) {
+                    next = sharedIt.next();
+                    return true;
+                }
+                while (ownIt.hasNext()) {
+                    next = ownIt.next();
+                    if (!shared.contains(next)) return true;
+                }
+                return false;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext) throw new NoSuchElementException();
+                Object current = next;
+                hasNext = advance();
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return shared.contains(value) || own.contains(value);
+    }
+
+    /**
+     * @return the number of distinct values of both, the values dropped
+     * because of the cap included
+     */
+    public int getCount() {
+        int count = shared.getCount();
+        for (Object value : own) {
+            if (!shared.wasAdded(value)) count++;
+        }
+        for (Object value : own.getDropped()) {
+            if (!shared.wasAdded(value)) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        int size = shared.size();
+        for (Object value : own) {
+            if (!shared.contains(value)) size++;
+        }
+        return size;
+    }
+}
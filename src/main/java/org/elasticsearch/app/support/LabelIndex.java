@@ -0,0 +1,84 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Labels held by a model for the label properties of the
+ * {@link NormalizationPlan.LabelRule}s, built once before the documents of
+ * the model are built. Looking a label up is then a hash lookup, a missing
+ * label is not an error.
+ */
+public class LabelIndex {
+
+    private static final LabelIndex EMPTY = new LabelIndex(Collections.emptyMap());
+
+    /* Labels by resource IRI, by label property */
+    private final Map<String, Map<String, String>> labels;
+
+    private LabelIndex(Map<String, Map<String, String>> labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * @return an index without labels
+     */
+    public static LabelIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Reads the literal values of the label properties from a model. The
+     * first label read for a resource is kept.
+     *
+     * @param model           the model
+     * @param labelProperties IRIs of the label properties
+     * @return the index
+     */
+    public static LabelIndex build(Model model, Set<String> labelProperties) {
+        if (labelProperties.isEmpty()) return EMPTY;
+        Map<String, Map<String, String>> labels = new HashMap<>();
+        for (String labelProperty : labelProperties) {
+            Map<String, String> propertyLabels = new HashMap<>();
+            StmtIterator it = model.listStatements(null, model.getProperty(labelProperty), (RDFNode) null);
+            try {
+                while (it.hasNext()) {
+                    Statement st = it.nextStatement();
+                    if (st.getSubject().isURIResource() && st.getObject().isLiteral()) {
+                        propertyLabels.putIfAbsent(st.getSubject().getURI(),
+                                st.getObject().asLiteral().getLexicalForm());
+                    }
+                }
+            } finally {
+                it.close();
+            }
+            labels.put(labelProperty, propertyLabels);
+        }
+        return new LabelIndex(labels);
+    }
+
+    /**
+     * @param iri           IRI of a resource
+     * @param labelProperty IRI of the label property
+     * @return the label of the resource, null if the model has none
+     */
+    public String get(String iri, String labelProperty) {
+        Map<String, String> propertyLabels = labels.get(labelProperty);
+        return propertyLabels == null ? null : propertyLabels.get(iri);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, String> propertyLabels : labels.values()) {
+            size += propertyLabels.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,117 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.datatypes.DatatypeFormatException;
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Literal;
+import org.elasticsearch.app.EEASettings;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts RDF literals into document values, through a table of converters
+ * by datatype IRI.
+ * <p>
+ * Numbers and booleans are passed as they are, xsd:dateTime and xsd:date
+ * values are written in the ISO-8601 form ES parses as dates, the other
+ * literals are sanitized with {@link EEASettings#parseForJson(String)}. The
+ * converter of a datatype missing from the table is chosen once from the Java
+ * class of its values and added to the table.
+ */
+public final class LiteralConverter {
+
+    /**
+     * Converts a literal of a given datatype
+     */
+    interface Converter {
+        Object convert(Literal literal);
+    }
+
+    private static final DateTimeFormatter DATE_TIME_WITH_OFFSET =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final DateTimeFormatter DATE_TIME =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS");
+
+    private static final Converter TEXT = literal -> EEASettings.parseForJson(literal.getLexicalForm());
+
+    private static final Converter VALUE = literal -> {
+        try {
+            return literal.getValue();
+        } catch (DatatypeFormatException e) {
+            // Ill-formed lexical form, e.g. "n/a"^^xsd:integer
+            return TEXT.convert(literal);
+        }
+    };
+
+    private static final Converter DATE_TIME_VALUE = literal -> {
+        String lexical = literal.getLexicalForm().trim();
+        try {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(lexical,
+                    OffsetDateTime::from, LocalDateTime::from);
+            return parsed instanceof OffsetDateTime
+                    ? DATE_TIME_WITH_OFFSET.format(parsed)
+                    : DATE_TIME.format(parsed);
+        } catch (DateTimeParseException e) {
+            return TEXT.convert(literal);
+        }
+    };
+
+    private static final Converter DATE_VALUE = literal -> {
+        try {
+            // The timezone of a date is dropped, ES dates have none
+            return LocalDate.parse(literal.getLexicalForm().trim(), DateTimeFormatter.ISO_DATE)
+                    .format(DateTimeFormatter.ISO_LOCAL_DATE);
+        } catch (DateTimeParseException e) {
+            return TEXT.convert(literal);
+        }
+    };
+
+    private static final Map<String, Converter> converters = new ConcurrentHashMap<>();
+
+    static {
+        XSDDatatype[] values = {
+                XSDDatatype.XSDboolean,
+                XSDDatatype.XSDdecimal, XSDDatatype.XSDinteger,
+                XSDDatatype.XSDnonPositiveInteger, XSDDatatype.XSDnegativeInteger,
+                XSDDatatype.XSDnonNegativeInteger, XSDDatatype.XSDpositiveInteger,
+                XSDDatatype.XSDlong, XSDDatatype.XSDint, XSDDatatype.XSDshort, XSDDatatype.XSDbyte,
+                XSDDatatype.XSDunsignedLong, XSDDatatype.XSDunsignedInt,
+                XSDDatatype.XSDunsignedShort, XSDDatatype.XSDunsignedByte,
+                XSDDatatype.XSDdouble, XSDDatatype.XSDfloat
+        };
+        for (XSDDatatype datatype : values) {
+            converters.put(datatype.getURI(), VALUE);
+        }
+        converters.put(XSDDatatype.XSDdateTime.getURI(), DATE_TIME_VALUE);
+        converters.put(XSDDatatype.XSDdate.getURI(), DATE_VALUE);
+        converters.put(XSDDatatype.XSDstring.getURI(), TEXT);
+    }
+
+    private LiteralConverter() {
+    }
+
+    /**
+     * @param literal a literal
+     * @return the value of the literal in a document
+     */
+    public static Object convert(Literal literal) {
+        RDFDatatype datatype = literal.getDatatype();
+        if (datatype == null) return TEXT.convert(literal);
+        return converters.computeIfAbsent(datatype.getURI(), uri -> classify(datatype)).convert(literal);
+    }
+
+    private static Converter classify(RDFDatatype datatype) {
+        Class<?> javaClass = datatype.getJavaClass();
+        if (javaClass != null && (Boolean.class.equals(javaClass) || Number.class.isAssignableFrom(javaClass))) {
+            return VALUE;
+        }
+        return TEXT;
+    }
+}
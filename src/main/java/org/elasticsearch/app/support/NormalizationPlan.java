@@ -0,0 +1,452 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalization options of a river compiled into one action per property.
+ * <p>
+ * The plan is built once per harvest from the proplist and normalization
+ * settings (normProp, normObj, normMissing, whiteMap, blackMap) and is then
+ * only read by {@link ESNormalizer}, from any number of threads: the per
+ * resource code looks the property up and applies its action to every value,
+ * without inspecting the settings again. Field names are compacted by the
+ * {@link PrefixRegistry} of the river.
+ */
+public final class NormalizationPlan {
+
+    private static final ESLogger logger = Loggers.getLogger(NormalizationPlan.class);
+
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String SKOS_IN_SCHEME = "http://www.w3.org/2004/02/skos/core#inScheme";
+    private static final String SKOS_PREF_LABEL = "http://www.w3.org/2004/02/skos/core#prefLabel";
+    private static final String DCT_TITLE = "http://purl.org/dc/terms/title";
+
+    /**
+     * Replaces a URI value by the label the harvested model holds for it,
+     * see {@link LabelIndex}
+     */
+    public static final class LabelRule {
+        private final String valuePrefix;
+        private final String labelProperty;
+
+        /**
+         * @param valuePrefix   prefix of the values to replace, empty for all
+         * @param labelProperty property holding the label of the value
+         */
+        public LabelRule(String valuePrefix, String labelProperty) {
+            this.valuePrefix = valuePrefix;
+            this.labelProperty = labelProperty;
+        }
+
+        public boolean matches(String value) {
+            return value.startsWith(valuePrefix);
+        }
+
+        public String getLabelProperty() {
+            return labelProperty;
+        }
+    }
+
+    /**
+     * What is done with the values of one property
+     */
+    public static final class PropertyAction {
+        private final boolean indexed;
+        private final String[] targets;
+        private final Set<String> allowed;
+        private final Set<String> denied;
+        private final LabelRule labelRule;
+
+        PropertyAction(boolean indexed, String[] targets, Set<String> allowed, Set<String> denied,
+                       LabelRule labelRule) {
+            this.indexed = indexed;
+            this.targets = targets;
+            this.allowed = allowed;
+            this.denied = denied;
+            this.labelRule = labelRule;
+        }
+
+        /**
+         * @return false if the property is left out by the proplist
+         */
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        /**
+         * @return names of the fields receiving the values
+         */
+        public String[] getTargets() {
+            return targets;
+        }
+
+        /**
+         * @param value a value of the property
+         * @return false if the value is left out by the whiteMap or the
+         * blackMap
+         */
+        public boolean accepts(Object value) {
+            if (allowed != null && !allowed.contains(value)) return false;
+            return denied == null || !denied.contains(value);
+        }
+
+        /**
+         * @return the label rule of the property or null
+         */
+        public LabelRule getLabelRule() {
+            return labelRule;
+        }
+    }
+
+    private final boolean addUriForResource;
+    private final int maxValuesPerField;
+    private final PrefixRegistry prefixes;
+    private final Set<String> propList;
+    private final boolean whitePropList;
+    private final Map<String, PropertyAction> actions;
+    private final Map<String, String> valueRewrites;
+    private final Map<String, List<Object>> missing;
+    private final Map<String, LabelRule> labelRules;
+    private final boolean addCounting;
+    private final boolean nestedLanguages;
+    private final ConcurrentHashMap<String, PropertyAction> plainActions = new ConcurrentHashMap<>();
+
+    private NormalizationPlan(boolean addUriForResource, int maxValuesPerField, PrefixRegistry prefixes,
+                              Set<String> propList, boolean whitePropList,
+                              Map<String, PropertyAction> actions, Map<String, String> valueRewrites,
+                              Map<String, List<Object>> missing, Map<String, LabelRule> labelRules,
+                              boolean addCounting, boolean nestedLanguages) {
+        this.addUriForResource = addUriForResource;
+        this.maxValuesPerField = maxValuesPerField;
+        this.prefixes = prefixes;
+        this.propList = propList;
+        this.whitePropList = whitePropList;
+        this.actions = actions;
+        this.valueRewrites = valueRewrites;
+        this.missing = missing;
+        this.labelRules = labelRules;
+        this.addCounting = addCounting;
+        this.nestedLanguages = nestedLanguages;
+    }
+
+    /**
+     * Collects the normalization settings of a river with fluent setters,
+     * the settings not set keep their defaults: every property indexed under
+     * its own name, no value filtered or rewritten, no cap, no prefix, the
+     * {@link #defaultLabelRules()}, no counting and one document per language.
+     */
+    public static final class Builder {
+        private boolean addUriForResource = false;
+        private List<String> propList = Collections.emptyList();
+        private boolean whitePropList = false;
+        private Map<String, Object> normalizeProp = Collections.emptyMap();
+        private Map<String, Set<String>> whiteMap = Collections.emptyMap();
+        private Map<String, Set<String>> blackMap = Collections.emptyMap();
+        private Map<String, String> normalizeObj = Collections.emptyMap();
+        private Map<String, Object> normalizeMissing = Collections.emptyMap();
+        private int maxValuesPerField = 0;
+        private PrefixRegistry prefixes = PrefixRegistry.none();
+        private Map<String, LabelRule> labelRules = null;
+        private boolean addCounting = false;
+        private boolean nestedLanguages = false;
+
+        private Builder() {
+        }
+
+        /**
+         * @param addUriForResource whether the URI of the resource is indexed
+         */
+        public Builder addUriForResource(boolean addUriForResource) {
+            this.addUriForResource = addUriForResource;
+            return this;
+        }
+
+        /**
+         * @param propList      properties indexed or left out
+         * @param whitePropList true if only the properties of propList are
+         *                      indexed, false if they are left out
+         */
+        public Builder propList(List<String> propList, boolean whitePropList) {
+            this.propList = propList;
+            this.whitePropList = whitePropList;
+            return this;
+        }
+
+        /**
+         * @param normalizeProp field name or list of field names per property
+         */
+        public Builder normalizeProp(Map<String, Object> normalizeProp) {
+            this.normalizeProp = normalizeProp;
+            return this;
+        }
+
+        /**
+         * @param whiteMap the only values indexed per property
+         */
+        public Builder whiteMap(Map<String, Set<String>> whiteMap) {
+            this.whiteMap = whiteMap;
+            return this;
+        }
+
+        /**
+         * @param blackMap values left out per property
+         */
+        public Builder blackMap(Map<String, Set<String>> blackMap) {
+            this.blackMap = blackMap;
+            return this;
+        }
+
+        /**
+         * @param normalizeObj replacement per value
+         */
+        public Builder normalizeObj(Map<String, String> normalizeObj) {
+            this.normalizeObj = normalizeObj;
+            return this;
+        }
+
+        /**
+         * @param normalizeMissing values of the fields a resource misses
+         */
+        public Builder normalizeMissing(Map<String, Object> normalizeMissing) {
+            this.normalizeMissing = normalizeMissing;
+            return this;
+        }
+
+        /**
+         * @param maxValuesPerField maximum number of values of a field, 0 for
+         *                          no limit
+         */
+        public Builder maxValuesPerField(int maxValuesPerField) {
+            this.maxValuesPerField = maxValuesPerField;
+            return this;
+        }
+
+        /**
+         * @param prefixes registry compacting the field names
+         */
+        public Builder prefixes(PrefixRegistry prefixes) {
+            this.prefixes = prefixes;
+            return this;
+        }
+
+        /**
+         * @param labelRules label rules by property, null for the
+         *                   {@link #defaultLabelRules()}
+         */
+        public Builder labelRules(Map<String, LabelRule> labelRules) {
+            this.labelRules = labelRules;
+            return this;
+        }
+
+        /**
+         * @param addCounting whether the number of values of every field is
+         *                    indexed as well
+         */
+        public Builder addCounting(boolean addCounting) {
+            this.addCounting = addCounting;
+            return this;
+        }
+
+        /**
+         * @param nestedLanguages whether the languages of a resource are
+         *                        nested in a single document instead of one
+         *                        document per language
+         */
+        public Builder nestedLanguages(boolean nestedLanguages) {
+            this.nestedLanguages = nestedLanguages;
+            return this;
+        }
+
+        /**
+         * @return the plan compiled from the settings
+         */
+        public NormalizationPlan compile() {
+            Map<String, LabelRule> rules = labelRules == null ? defaultLabelRules() : labelRules;
+
+            Set<String> properties = new HashSet<>();
+            properties.addAll(normalizeProp.keySet());
+            properties.addAll(whiteMap.keySet());
+            properties.addAll(blackMap.keySet());
+            properties.addAll(rules.keySet());
+
+            Set<String> propSet = Collections.unmodifiableSet(new HashSet<>(propList));
+            Map<String, PropertyAction> actions = new HashMap<>();
+            for (String property : properties) {
+                actions.put(property, new PropertyAction(
+                        isIndexed(property, propSet, whitePropList) || normalizeProp.containsKey(property),
+                        targets(property, normalizeProp.get(property), prefixes),
+                        immutable(whiteMap.get(property)),
+                        immutable(blackMap.get(property)),
+                        rules.get(property)));
+            }
+
+            Map<String, List<Object>> missing = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : normalizeMissing.entrySet()) {
+                missing.put(prefixes.compact(entry.getKey()),
+                        Collections.unmodifiableList(missingValues(entry.getValue())));
+            }
+
+            return new NormalizationPlan(addUriForResource, maxValuesPerField, prefixes, propSet, whitePropList,
+                    Collections.unmodifiableMap(actions),
+                    Collections.unmodifiableMap(new HashMap<>(normalizeObj)),
+                    Collections.unmodifiableMap(missing),
+                    Collections.unmodifiableMap(new HashMap<>(rules)), addCounting, nestedLanguages);
+        }
+    }
+
+    /**
+     * @return a builder collecting the normalization settings of a river
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the label rules applied when the river has no labelRules: the
+     * types of the Czech semantic vocabulary and the concept schemes are
+     * indexed by their labels
+     */
+    public static Map<String, LabelRule> defaultLabelRules() {
+        Map<String, LabelRule> labelRules = new HashMap<>();
+        labelRules.put(RDF_TYPE, new LabelRule("https://slovník.gov.cz/základní/pojem/", SKOS_PREF_LABEL));
+        labelRules.put(SKOS_IN_SCHEME, new LabelRule("", DCT_TITLE));
+        return labelRules;
+    }
+
+    private static String[] targets(String property, Object normalized, PrefixRegistry prefixes) {
+        if (normalized == null) return new String[]{prefixes.compact(property)};
+        if (normalized instanceof List<?>) {
+            List<?> names = (List<?>) normalized;
+            String[] targets = new String[names.size()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = prefixes.compact(names.get(i).toString());
+            }
+            return targets;
+        }
+        if (!(normalized instanceof String)) {
+            logger.error("Normalizer error: unexpected normProp value [{}] for [{}]", normalized, property);
+        }
+        return new String[]{prefixes.compact(normalized.toString())};
+    }
+
+    private static boolean isIndexed(String property, Set<String> propList, boolean whitePropList) {
+        return propList.isEmpty() || whitePropList == propList.contains(property);
+    }
+
+    private static Set<String> immutable(Set<String> values) {
+        return values == null ? null : Collections.unmodifiableSet(new HashSet<>(values));
+    }
+
+    private static List<Object> missingValues(Object values) {
+        List<Object> res = new ArrayList<>();
+        if (values instanceof String || values instanceof Number) {
+            res.add(values);
+        } else if (values instanceof List<?>) {
+            res.addAll((List<?>) values);
+        } else {
+            res.add(values.toString());
+        }
+        return res;
+    }
+
+    /**
+     * @param property URI of a property
+     * @return the action applied to the values of the property
+     */
+    public PropertyAction action(String property) {
+        PropertyAction action = actions.get(property);
+        if (action != null) return action;
+        return plainActions.computeIfAbsent(property,
+                p -> new PropertyAction(isIndexed(p, propList, whitePropList),
+                        new String[]{prefixes.compact(p)}, null, null, null));
+    }
+
+    /**
+     * @param value a value
+     * @return the replacement of the value from normObj or the value itself
+     */
+    public Object rewrite(Object value) {
+        String replacement = valueRewrites.get(value);
+        return replacement == null ? value : replacement;
+    }
+
+    public boolean isAddUriForResource() {
+        return addUriForResource;
+    }
+
+    public boolean isAddCounting() {
+        return addCounting;
+    }
+
+    public boolean isNestedLanguages() {
+        return nestedLanguages;
+    }
+
+    public int getMaxValuesPerField() {
+        return maxValuesPerField;
+    }
+
+    /**
+     * @return the values of the fields a resource misses, by field name
+     */
+    public Map<String, List<Object>> getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return the names of the fields known from the settings: the targets
+     * of the configured properties that are indexed, of the properties of a
+     * white propList and the fields of normMissing
+     */
+    public Set<String> getFieldNames() {
+        Set<String> fieldNames = new TreeSet<>();
+        for (PropertyAction action : actions.values()) {
+            if (action.isIndexed()) fieldNames.addAll(Arrays.asList(action.getTargets()));
+        }
+        if (whitePropList) {
+            for (String property : propList) {
+                fieldNames.addAll(Arrays.asList(action(property).getTargets()));
+            }
+        }
+        fieldNames.addAll(missing.keySet());
+        return fieldNames;
+    }
+
+    /**
+     * @return the registry compacting the field names
+     */
+    public PrefixRegistry getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * @return the label rules by property
+     */
+    public Map<String, LabelRule> getLabelRules() {
+        return labelRules;
+    }
+
+    /**
+     * @return IRIs of the label properties of the label rules
+     */
+    public Set<String> getLabelProperties() {
+        Set<String> labelProperties = new HashSet<>();
+        for (LabelRule labelRule : labelRules.values()) {
+            labelProperties.add(labelRule.getLabelProperty());
+        }
+        return labelProperties;
+    }
+}
@@ -0,0 +1,136 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.app.EEASettings;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compacts property IRIs into "prefix:localName" field names.
+ * <p>
+ * The registry holds the namespaces of common vocabularies, extended or
+ * overridden by the "prefixes" of the river. An IRI is compacted when the
+ * part up to its last '#' or '/' is a registered namespace and the local name
+ * does not contain a '.', which ES would read as an object path. Other IRIs
+ * are kept as they are.
+ */
+public final class PrefixRegistry {
+
+    /**
+     * Built-in prefixes of common vocabularies
+     */
+    public static final Map<String, String> BUILT_IN;
+
+    static {
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        prefixes.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+        prefixes.put("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+        prefixes.put("owl", "http://www.w3.org/2002/07/owl#");
+        prefixes.put("xsd", "http://www.w3.org/2001/XMLSchema#");
+        prefixes.put("skos", "http://www.w3.org/2004/02/skos/core#");
+        prefixes.put("skosxl", "http://www.w3.org/2008/05/skos-xl#");
+        prefixes.put("dcterms", "http://purl.org/dc/terms/");
+        prefixes.put("dc", "http://purl.org/dc/elements/1.1/");
+        prefixes.put("foaf", "http://xmlns.com/foaf/0.1/");
+        prefixes.put("schema", "http://schema.org/");
+        prefixes.put("dcat", "http://www.w3.org/ns/dcat#");
+        prefixes.put("prov", "http://www.w3.org/ns/prov#");
+        prefixes.put("org", "http://www.w3.org/ns/org#");
+        prefixes.put("vcard", "http://www.w3.org/2006/vcard/ns#");
+        prefixes.put("adms", "http://www.w3.org/ns/adms#");
+        prefixes.put("void", "http://rdfs.org/ns/void#");
+        prefixes.put("time", "http://www.w3.org/2006/time#");
+        prefixes.put("geo", "http://www.w3.org/2003/01/geo/wgs84_pos#");
+        BUILT_IN = Collections.unmodifiableMap(prefixes);
+    }
+
+    private static final PrefixRegistry NONE = new PrefixRegistry(Collections.emptyMap());
+
+    private final Map<String, String> prefixes;
+    private final Map<String, String> namespaces = new HashMap<>();
+
+    /**
+     * @param prefixes namespaces by prefix
+     */
+    public PrefixRegistry(Map<String, String> prefixes) {
+        this.prefixes = Collections.unmodifiableMap(new LinkedHashMap<>(prefixes));
+        for (Map.Entry<String, String> prefix : this.prefixes.entrySet()) {
+            namespaces.put(prefix.getValue(), prefix.getKey());
+        }
+    }
+
+    /**
+     * @return a registry compacting nothing
+     */
+    public static PrefixRegistry none() {
+        return NONE;
+    }
+
+    /**
+     * Creates the registry of a river from its "compactFieldNames" and
+     * "prefixes" settings.
+     *
+     * @param rdfSettings the eeaRDF settings of the river
+     * @return the registry, compacting nothing if compactFieldNames is off
+     */
+    @SuppressWarnings("unchecked")
+    public static PrefixRegistry fromSettings(Map<String, Object> rdfSettings) {
+        if (rdfSettings == null || !XContentMapValues.nodeBooleanValue(
+                rdfSettings.get("compactFieldNames"), EEASettings.DEFAULT_COMPACT_FIELD_NAMES)) {
+            return none();
+        }
+        Object custom = rdfSettings.get("prefixes");
+        return withBuiltIns(custom instanceof Map ? (Map<String, String>) custom : null);
+    }
+
+    /**
+     * @param custom prefixes added to the built-in ones, may be null
+     * @return a registry of the built-in and the custom prefixes, the custom
+     * ones taking precedence
+     */
+    public static PrefixRegistry withBuiltIns(Map<String, String> custom) {
+        Map<String, String> prefixes = new LinkedHashMap<>(BUILT_IN);
+        if (custom != null) {
+            // Drop the built-in prefixes of the namespaces mapped by the river
+            prefixes.values().removeAll(custom.values());
+            prefixes.putAll(custom);
+        }
+        return new PrefixRegistry(prefixes);
+    }
+
+    /**
+     * @param iri an IRI
+     * @return the compact name of the IRI or the IRI itself
+     */
+    public String compact(String iri) {
+        if (namespaces.isEmpty()) return iri;
+        int end = Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) + 1;
+        if (end <= 0 || end == iri.length()) return iri;
+        String prefix = namespaces.get(iri.substring(0, end));
+        if (prefix == null) return iri;
+        String localName = iri.substring(end);
+        if (localName.indexOf('.') >= 0) return iri;
+        return prefix + ":" + localName;
+    }
+
+    /**
+     * @param name a field name
+     * @return the IRI of a compact name, or the name itself
+     */
+    public String expand(String name) {
+        int colon = name.indexOf(':');
+        if (colon <= 0) return name;
+        String namespace = prefixes.get(name.substring(0, colon));
+        return namespace == null ? name : namespace + name.substring(colon + 1);
+    }
+
+    /**
+     * @return the namespaces by prefix
+     */
+    public Map<String, String> getPrefixes() {
+        return prefixes;
+    }
+}
@@ -0,0 +1,246 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.syntax.Element;
+import com.hp.hpl.jena.sparql.syntax.ElementFilter;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.PatternVars;
+import com.hp.hpl.jena.sparql.util.ExprUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites river queries for the harvest execution modes.
+ */
+public final class QueryRewriter {
+
+    private static final String DEFAULT_SUBJECT_VARIABLE = "s";
+
+    /**
+     * Subjects are hashed into this many buckets, the buckets are then
+     * distributed among the partitions.
+     */
+    public static final int PARTITION_BUCKETS = 256;
+
+    private QueryRewriter() {
+    }
+
+    /**
+     * Finds the variable holding the subjects of the harvested resources.
+     * It is the subject of the first template triple for CONSTRUCT queries,
+     * the first described variable for DESCRIBE queries and ?s otherwise.
+     *
+     * @param query the river query
+     * @return name of the subject variable, without the leading '?'
+     */
+    public static String subjectVariable(Query query) {
+        if (query.isConstructType()) {
+            for (Triple triple : query.getConstructTemplate().getTriples()) {
+                if (triple.getSubject().isVariable()) {
+                    return triple.getSubject().getName();
+                }
+            }
+        }
+        if (query.isDescribeType() && !query.getResultVars().isEmpty()) {
+            return query.getResultVars().get(0);
+        }
+        return DEFAULT_SUBJECT_VARIABLE;
+    }
+
+    /**
+     * Creates a query returning one page of the results of the given query.
+     * The ORDER BY of the query is completed with the subject variable and
+     * then the other variables of the query, so that the solutions are in a
+     * total order and the pages are disjoint. Queries without ORDER BY thus
+     * come in subject order. LIMIT and OFFSET of the original query are
+     * respected.
+     *
+     * @param query      the river query
+     * @param subjectVar variable used to order the results
+     * @param page       number of the page, starting with 0
+     * @param pageSize   number of solutions per page
+     * @return the page query or null if the page is past the original LIMIT
+     */
+    public static Query page(Query query, String subjectVar, long page, long pageSize) {
+        long offset = page * pageSize;
+        long limit = pageSize;
+        if (query.hasLimit()) {
+            if (offset >= query.getLimit()) return null;
+            limit = Math.min(limit, query.getLimit() - offset);
+        }
+
+        Query paged = query.cloneQuery();
+        addTiebreakers(paged, subjectVar);
+        paged.setOffset((query.hasOffset() ? query.getOffset() : 0) + offset);
+        paged.setLimit(limit);
+        return paged;
+    }
+
+    /**
+     * Appends the subject variable, then the other variables of the query,
+     * to its ORDER BY, skipping the variables it is already ordered by.
+     */
+    private static void addTiebreakers(Query query, String subjectVar) {
+        Set<String> ordered = new HashSet<>();
+        if (query.hasOrderBy()) {
+            for (SortCondition condition : query.getOrderBy()) {
+                if (condition.getExpression().isVariable()) {
+                    ordered.add(condition.getExpression().getVarName());
+                }
+            }
+        }
+        List<String> tiebreakers = new ArrayList<>();
+        if (query.isSelectType()) {
+            // Only the projected variables can order the solutions of a SELECT
+            List<String> resultVars = query.getResultVars();
+            if (resultVars.contains(subjectVar)) tiebreakers.add(subjectVar);
+            tiebreakers.addAll(resultVars);
+        } else {
+            tiebreakers.add(subjectVar);
+        }
+        if (!query.isSelectType() && query.getQueryPattern() != null) {
+            for (Var var : PatternVars.vars(query.getQueryPattern())) {
+                tiebreakers.add(var.getVarName());
+            }
+        }
+        for (String var : tiebreakers) {
+            if (ordered.add(var)) {
+                query.addOrderBy(var, Query.ORDER_ASCENDING);
+            }
+        }
+    }
+
+    /**
+     * Creates a query telling whether a page query has solutions, for the
+     * pages of CONSTRUCT or DESCRIBE queries returning no triple.
+     *
+     * @param page the page query
+     * @return a SELECT query returning the first solution of the page, if any
+     */
+    public static Query firstSolution(Query page) {
+        Query probe = page.cloneQuery();
+        probe.setQuerySelectType();
+        probe.setQueryResultStar(true);
+        probe.setLimit(1);
+        return probe;
+    }
+
+    /**
+     * Checks whether the results of the query are primarily ordered by the
+     * subject variable.
+     *
+     * @param query      the river query
+     * @param subjectVar the subject variable
+     * @return true if the first ORDER BY condition is the subject variable
+     */
+    public static boolean isOrderedBy(Query query, String subjectVar) {
+        if (!query.hasOrderBy()) return false;
+        SortCondition first = query.getOrderBy().get(0);
+        return first.getExpression().isVariable()
+                && first.getExpression().getVarName().equals(subjectVar);
+    }
+
+    /**
+     * Checks whether the results of the river queries can be indexed subject
+     * by subject while they are received. The river must have a single
+     * query, a resource in several queries would be indexed once per query.
+     * The query must be a SELECT or a CONSTRUCT whose template triples all
+     * have the subject variable as subject, not ordered by another key first,
+     * so that it can be ordered by subject.
+     *
+     * @param queries the river queries
+     * @return why the results cannot be indexed while received, null if
+     * they can
+     */
+    public static String checkGroupedBySubject(List<Query> queries) {
+        if (queries.size() != 1) {
+            return "the river has " + queries.size() + " queries, a resource may be in several of them";
+        }
+        Query query = queries.get(0);
+        String subjectVar = subjectVariable(query);
+        if (query.isDescribeType()) {
+            return "the descriptions of a DESCRIBE query are not grouped by resource";
+        }
+        if (query.isConstructType()) {
+            for (Triple triple : query.getConstructTemplate().getTriples()) {
+                if (!triple.getSubject().isVariable() || !triple.getSubject().getName().equals(subjectVar)) {
+                    return "the CONSTRUCT template has other subjects than ?" + subjectVar;
+                }
+            }
+        }
+        if (query.hasOrderBy() && !isOrderedBy(query, subjectVar)) {
+            return "the query is not ordered by ?" + subjectVar + " first";
+        }
+        return null;
+    }
+
+    /**
+     * Creates a query returning the results of the given query ordered by the
+     * subject variable, so that all the solutions of a subject are adjacent.
+     * Queries without ORDER BY get one, other queries are returned as they are.
+     *
+     * @param query      the river query
+     * @param subjectVar variable used to order the results
+     * @return the ordered query
+     */
+    public static Query orderBySubject(Query query, String subjectVar) {
+        if (query.hasOrderBy()) return query;
+        Query ordered = query.cloneQuery();
+        ordered.addOrderBy(subjectVar, Query.ORDER_ASCENDING);
+        return ordered;
+    }
+
+    /**
+     * Checks whether the subject variable is bound by the WHERE clause, so the
+     * query can be partitioned over it. Queries with LIMIT or OFFSET are not
+     * partitioned: every partition would apply them on its own and together
+     * return other solutions than the query.
+     *
+     * @param query      the river query
+     * @param subjectVar the subject variable
+     * @return true if the query can be partitioned
+     */
+    public static boolean canPartition(Query query, String subjectVar) {
+        if (query.hasLimit() || query.hasOffset()) return false;
+        Element pattern = query.getQueryPattern();
+        return pattern != null && PatternVars.vars(pattern).contains(Var.alloc(subjectVar));
+    }
+
+    /**
+     * Creates a query returning the results of the given query for one of
+     * the disjoint subject partitions. The subjects are assigned to the
+     * {@link #PARTITION_BUCKETS} buckets by the first two hex digits of the MD5
+     * of their IRI, bucket b belongs to partition b % partitions. Blank node
+     * subjects all belong to partition 0.
+     *
+     * @param query      the river query
+     * @param subjectVar variable holding the subjects
+     * @param partition  number of the partition, starting with 0
+     * @param partitions number of partitions, at most {@link #PARTITION_BUCKETS}
+     * @return the partition query
+     */
+    public static Query partition(Query query, String subjectVar, int partition, int partitions) {
+        StringBuilder buckets = new StringBuilder();
+        for (int bucket = partition; bucket < PARTITION_BUCKETS; bucket += partitions) {
+            if (buckets.length() > 0) buckets.append(", ");
+            buckets.append(String.format("\"%02x\"", bucket));
+        }
+        Expr filter = ExprUtils.parse(String.format(
+                "IF(isBlank(?%1$s), \"00\", SUBSTR(MD5(STR(?%1$s)), 1, 2)) IN (%2$s)",
+                subjectVar, buckets));
+
+        Query partitioned = query.cloneQuery();
+        ElementGroup group = new ElementGroup();
+        group.addElement(partitioned.getQueryPattern());
+        group.addElementFilter(new ElementFilter(filter));
+        partitioned.setQueryPattern(group);
+        return partitioned;
+    }
+}
@@ -0,0 +1,237 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+import com.hp.hpl.jena.sparql.resultset.ResultsFormat;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDFLib;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result formats requested from a SPARQL endpoint. Graph results (CONSTRUCT,
+ * DESCRIBE) and SELECT results are configured separately, either by a format
+ * name, by a MIME type or as "auto", in which case the first format accepted
+ * by the endpoint is chosen by {@link #probe}. An empty format leaves the
+ * content negotiation to Jena.
+ * <p>
+ * The time spent executing the queries and reading their results is recorded
+ * per format. It covers the execution by the endpoint and the transfer of the
+ * results as well as their parsing, so it only compares the formats for the
+ * same queries on the same endpoint. It does not cover what is done with the
+ * results once read, such as indexing them.
+ */
+public class ResultFormats {
+
+    public static final String AUTO = "auto";
+
+    /**
+     * Graph formats by name, in the order they are probed
+     */
+    private static final Map<String, String> GRAPH_FORMATS = new LinkedHashMap<>();
+
+    /**
+     * SELECT result formats by name, in the order they are probed
+     */
+    private static final Map<String, String> SELECT_FORMATS = new LinkedHashMap<>();
+
+    static {
+        GRAPH_FORMATS.put("thrift", WebContent.contentTypeRDFThrift);
+        GRAPH_FORMATS.put("ntriples", WebContent.contentTypeNTriples);
+        GRAPH_FORMATS.put("turtle", WebContent.contentTypeTurtle);
+        GRAPH_FORMATS.put("rdfxml", WebContent.contentTypeRDFXML);
+        GRAPH_FORMATS.put("jsonld", WebContent.contentTypeJSONLD);
+
+        SELECT_FORMATS.put("tsv", WebContent.contentTypeTextTSV);
+        SELECT_FORMATS.put("json", WebContent.contentTypeResultsJSON);
+        SELECT_FORMATS.put("xml", WebContent.contentTypeResultsXML);
+        // CSV loses datatypes and languages, so it is never probed
+        SELECT_FORMATS.put("csv", WebContent.contentTypeTextCSV);
+    }
+
+    /**
+     * Executes a probe query with the given content type.
+     */
+    public interface Probe {
+        /**
+         * @param contentType content type requested from the endpoint
+         * @return content type of the response
+         * @throws Exception if the query failed or its result is not readable
+         */
+        String run(String contentType) throws Exception;
+    }
+
+    private final String graphFormat;
+    private final String selectFormat;
+    private String graphContentType;
+    private String selectContentType;
+
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+    /**
+     * @param graphFormat  format of CONSTRUCT and DESCRIBE results
+     * @param selectFormat format of SELECT results
+     * @throws IllegalArgumentException if a format is not known
+     */
+    public ResultFormats(String graphFormat, String selectFormat) {
+        this.graphFormat = graphFormat == null ? "" : graphFormat.trim().toLowerCase();
+        this.selectFormat = selectFormat == null ? "" : selectFormat.trim().toLowerCase();
+        this.graphContentType = contentType(GRAPH_FORMATS, this.graphFormat);
+        this.selectContentType = contentType(SELECT_FORMATS, this.selectFormat);
+    }
+
+    private static String contentType(Map<String, String> formats, String format) {
+        if (format.isEmpty() || AUTO.equals(format)) return null;
+        if (format.contains("/")) return format;
+        String contentType = formats.get(format);
+        if (contentType == null) {
+            throw new IllegalArgumentException("Unknown result format: " + format
+                    + ", expected one of " + formats.keySet());
+        }
+        return contentType;
+    }
+
+    /**
+     * Checks whether the format of the given results still has to be probed.
+     *
+     * @param select true for SELECT results
+     * @return true if the format is "auto" and was not probed yet
+     */
+    public synchronized boolean needsProbe(boolean select) {
+        return select
+                ? AUTO.equals(selectFormat) && selectContentType == null
+                : AUTO.equals(graphFormat) && graphContentType == null;
+    }
+
+    /**
+     * Chooses the first format for which the probe succeeds with a response
+     * in that format. Endpoints ignoring the requested content type thus only
+     * validate the format they answer in. When no format succeeds, the
+     * content negotiation is left to Jena.
+     *
+     * @param select true for SELECT results
+     * @param probe  executes a small query with the given content type
+     * @return the chosen content type or null
+     */
+    public String probe(boolean select, Probe probe) {
+        for (Map.Entry<String, String> format : (select ? SELECT_FORMATS : GRAPH_FORMATS).entrySet()) {
+            if (select && "csv".equals(format.getKey())) continue;
+            try {
+                if (!isSameType(format.getValue(), probe.run(format.getValue()))) continue;
+            } catch (Exception e) {
+                continue;
+            }
+            synchronized (this) {
+                if (select) {
+                    selectContentType = format.getValue();
+                } else {
+                    graphContentType = format.getValue();
+                }
+            }
+            return format.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * @param requested content type requested from the endpoint
+     * @param returned  content type of the response, may hold parameters
+     * @return true if the response is in the requested format
+     */
+    public static boolean isSameType(String requested, String returned) {
+        if (returned == null) return false;
+        String type = returned.split(";")[0].trim();
+        if (type.equalsIgnoreCase(requested)) return true;
+        // Formats known under several content types, e.g. text/plain for N-Triples
+        Lang requestedLang = RDFLanguages.contentTypeToLang(requested);
+        return requestedLang != null && requestedLang.equals(RDFLanguages.contentTypeToLang(type));
+    }
+
+    /**
+     * Reads a whole result, to check it is readable.
+     *
+     * @param in          the result
+     * @param contentType content type of the result
+     * @param select      true for SELECT results
+     * @throws Exception if the result is not readable in the content type
+     */
+    public static void read(InputStream in, String contentType, boolean select) throws Exception {
+        if (!select) {
+            Lang lang = RDFLanguages.contentTypeToLang(contentType);
+            if (lang == null) throw new IllegalArgumentException("Unknown graph format: " + contentType);
+            RDFDataMgr.parse(StreamRDFLib.sinkNull(), in, lang);
+        } else if (WebContent.contentTypeTextTSV.equals(contentType)) {
+            ResultSetFormatter.consume(ResultSetFactory.fromTSV(in));
+        } else if (WebContent.contentTypeResultsJSON.equals(contentType)) {
+            ResultSetFormatter.consume(ResultSetFactory.fromJSON(in));
+        } else if (WebContent.contentTypeResultsXML.equals(contentType)) {
+            ResultSetFormatter.consume(ResultSetFactory.fromXML(in));
+        } else {
+            ResultSetFormatter.consume(ResultSetFactory.load(in, ResultsFormat.FMT_RS_CSV));
+        }
+    }
+
+    /**
+     * Requests the configured format from the endpoint.
+     *
+     * @param qExec  the query execution
+     * @param select true for SELECT queries
+     */
+    public synchronized void configure(QueryEngineHTTP qExec, boolean select) {
+        if (select && selectContentType != null) {
+            qExec.setSelectContentType(selectContentType);
+        } else if (!select && graphContentType != null) {
+            qExec.setModelContentType(graphContentType);
+        }
+    }
+
+    /**
+     * @param select true for SELECT results
+     * @return name of the requested format, "default" when negotiated by Jena
+     */
+    public synchronized String name(boolean select) {
+        String contentType = select ? selectContentType : graphContentType;
+        if (contentType == null) return "default";
+        for (Map.Entry<String, String> format : (select ? SELECT_FORMATS : GRAPH_FORMATS).entrySet()) {
+            if (format.getValue().equals(contentType)) return format.getKey();
+        }
+        return contentType;
+    }
+
+    /**
+     * Records the time spent executing a query and reading its results,
+     * without the time spent handling them.
+     *
+     * @param select true for SELECT results
+     * @param millis time in milliseconds
+     * @param items  number of triples or solutions read
+     */
+    public synchronized void record(boolean select, long millis, long items) {
+        long[] timing = timings.computeIfAbsent(name(select), k -> new long[3]);
+        timing[0]++;
+        timing[1] += millis;
+        timing[2] += items;
+    }
+
+    /**
+     * @return one line per format with the number of queries, the time spent
+     * and the number of items read
+     */
+    public synchronized List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, long[]> timing : timings.entrySet()) {
+            long[] t = timing.getValue();
+            lines.add(String.format("%s: %d queries, %d ms, %d items (%.1f items/ms)",
+                    timing.getKey(), t[0], t[1], t[2], t[1] == 0 ? 0.0 : (double) t[2] / t[1]));
+        }
+        return lines;
+    }
+}
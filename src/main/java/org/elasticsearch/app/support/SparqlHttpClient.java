@@ -0,0 +1,278 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.jena.atlas.web.TypedInputStream;
+import org.apache.jena.riot.web.HttpOp;
+import org.elasticsearch.app.EEASettings;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client shared by all the SPARQL queries of the indexer.
+ * <p>
+ * Without a default client, Jena opens a new client, and so new connections,
+ * for every query. The shared client keeps the connections to the endpoints
+ * alive in a pool and the queries ask for compressed responses. The
+ * connections to an endpoint are limited to what the harvests running on it
+ * may use at once, see {@link #registerEndpoint(String, int, int)}.
+ * <p>
+ * Jena 2.12 requires an {@code AbstractHttpClient} and sets the timeouts of
+ * every query on the parameters of the client, both of the deprecated 4.2
+ * HttpClient API. The classes of that API are therefore referred to by their
+ * full names, which keeps the deprecation warnings of their imports out of the
+ * build, and the parameters of the client are kept per thread: each query
+ * starts from the defaults, so the timeouts of a query never apply to another.
+ */
+@SuppressWarnings("deprecation")
+public final class SparqlHttpClient {
+
+    private static final ESLogger logger = Loggers.getLogger(SparqlHttpClient.class);
+
+    /* Set first by Jena for every query, before its timeouts */
+    private static final String CONNECTION_WAIT = "http.conn-manager.timeout";
+
+    private static org.apache.http.impl.conn.PoolingClientConnectionManager connectionManager;
+    private static org.apache.http.impl.client.DefaultHttpClient client;
+    private static int maxConnections;
+    private static int maxConnectionsPerEndpoint;
+
+    /* Connections needed by the running harvests, by endpoint */
+    private static final Map<HttpRoute, Integer> demands = new HashMap<>();
+    /* Limits set by the rivers, by endpoint */
+    private static final Map<HttpRoute, Integer> limits = new HashMap<>();
+
+    private SparqlHttpClient() {
+    }
+
+    /**
+     * Creates the shared client and registers it as the default HTTP client of
+     * Jena. Calling it again replaces the limits of the pool.
+     *
+     * @param maxConnections            maximum number of open connections
+     * @param maxConnectionsPerEndpoint default maximum number of open
+     *                                  connections to one endpoint
+     */
+    public static synchronized void install(int maxConnections, int maxConnectionsPerEndpoint) {
+        if (client == null) {
+            connectionManager = new org.apache.http.impl.conn.PoolingClientConnectionManager(
+                    org.apache.http.impl.conn.SchemeRegistryFactory.createSystemDefault());
+            client = new org.apache.http.impl.client.DefaultHttpClient(connectionManager);
+            client.setParams(new QueryParams());
+            HttpOp.setDefaultHttpClient(client);
+        }
+        SparqlHttpClient.maxConnections = Math.max(1, maxConnections);
+        SparqlHttpClient.maxConnectionsPerEndpoint = Math.max(1, maxConnectionsPerEndpoint);
+        connectionManager.setDefaultMaxPerRoute(SparqlHttpClient.maxConnectionsPerEndpoint);
+        updateLimits();
+        logger.info("SPARQL connection pool: {} connections, {} per endpoint",
+                connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute());
+    }
+
+    /**
+     * Registers a harvest of the given endpoint. Unless the river limits the
+     * connections to the endpoint, the limit of the endpoint is raised to the
+     * connections all its harvests may use at once, so no query waits for a
+     * connection held by another query of the same harvest.
+     *
+     * @param endpoint       URL of the endpoint
+     * @param demand         number of connections the harvest may use at once
+     * @param maxConnections maximum number of connections set by the river,
+     *                       not positive if not set
+     * @return false if the limit set by the river is below the demand of the
+     * harvest, which is then not registered
+     */
+    public static synchronized boolean registerEndpoint(String endpoint, int demand, int maxConnections) {
+        HttpRoute route = route(endpoint);
+        if (route == null) return true;
+        if (maxConnections > 0 && demand > maxConnections) {
+            logger.error("A harvest of endpoint [{}] uses up to {} connections, above its maxConnections of {}",
+                    endpoint, demand, maxConnections);
+            return false;
+        }
+        demands.merge(route, demand, Integer::sum);
+        if (maxConnections > 0) {
+            limits.put(route, maxConnections);
+            if (demands.get(route) > maxConnections) {
+                logger.warn("The harvests of endpoint [{}] use up to {} connections, above its maxConnections of {};"
+                        + " their queries will wait for connections", endpoint, demands.get(route), maxConnections);
+            }
+        }
+        updateLimits();
+        return true;
+    }
+
+    /**
+     * Unregisters a harvest registered with
+     * {@link #registerEndpoint(String, int, int)}.
+     *
+     * @param endpoint URL of the endpoint
+     * @param demand   number of connections the harvest was registered with
+     */
+    public static synchronized void unregisterEndpoint(String endpoint, int demand) {
+        HttpRoute route = route(endpoint);
+        if (route == null || !demands.containsKey(route)) return;
+        demands.computeIfPresent(route, (r, current) -> current > demand ? current - demand : null);
+        if (!demands.containsKey(route)) {
+            limits.remove(route);
+            connectionManager.setMaxPerRoute(route, maxConnectionsPerEndpoint);
+        }
+        updateLimits();
+    }
+
+    /**
+     * Sets the limit of every endpoint and of the pool from the registered
+     * harvests.
+     */
+    private static void updateLimits() {
+        if (connectionManager == null) return;
+        int total = 0;
+        for (Map.Entry<HttpRoute, Integer> demand : demands.entrySet()) {
+            Integer limit = limits.get(demand.getKey());
+            int routeLimit = limit != null ? limit : Math.max(maxConnectionsPerEndpoint, demand.getValue());
+            connectionManager.setMaxPerRoute(demand.getKey(), routeLimit);
+            total += routeLimit;
+        }
+        connectionManager.setMaxTotal(Math.max(maxConnections, total));
+    }
+
+    /**
+     * @param endpoint URL of an endpoint
+     * @return the route of the pool to the endpoint, null if the URL is not valid
+     */
+    static HttpRoute route(String endpoint) {
+        if (endpoint == null) return null;
+        try {
+            URL url = new URL(endpoint);
+            // The pool routes to the default port when the URL has none
+            int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            return new HttpRoute(new HttpHost(url.getHost(), port, url.getProtocol()));
+        } catch (MalformedURLException e) {
+            logger.warn("Could not set the connection limit of endpoint [{}]: {}",
+                    endpoint, e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Asks for compressed responses. Jena decompresses them on top of the
+     * shared client.
+     *
+     * @param qExec the query execution
+     * @return the same query execution
+     */
+    public static QueryEngineHTTP configure(QueryEngineHTTP qExec) {
+        qExec.setAllowGZip(true);
+        qExec.setAllowDeflate(true);
+        return qExec;
+    }
+
+    /**
+     * Sends a query with GET and returns the response as it is, with its
+     * content type, for the callers which have to know it.
+     *
+     * @param endpoint      URL of the endpoint
+     * @param query         the query
+     * @param accept        content type requested
+     * @param timeoutMillis connection and read timeout
+     * @return the response, to close once read
+     * @throws org.apache.jena.atlas.web.HttpException if the query failed
+     */
+    public static TypedInputStream get(String endpoint, String query, String accept, int timeoutMillis) {
+        String url;
+        try {
+            url = endpoint + (endpoint.contains("?") ? "&" : "?") + "query=" + URLEncoder.encode(query, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        org.apache.http.impl.client.DefaultHttpClient current;
+        synchronized (SparqlHttpClient.class) {
+            current = client;
+        }
+        if (current == null) {
+            return HttpOp.execHttpGet(url, accept);
+        }
+        // Starts the parameters of the query, as Jena does
+        org.apache.http.params.HttpParams params = current.getParams();
+        params.setLongParameter(CONNECTION_WAIT, 0);
+        org.apache.http.params.HttpConnectionParams.setConnectionTimeout(params, timeoutMillis);
+        org.apache.http.params.HttpConnectionParams.setSoTimeout(params, timeoutMillis);
+        return HttpOp.execHttpGet(url, accept, current, null, null);
+    }
+
+    /**
+     * Closes the pooled connections idle for longer than the given time.
+     *
+     * @param idleSeconds idle time in seconds
+     */
+    public static synchronized void closeIdleConnections(long idleSeconds) {
+        if (connectionManager == null) return;
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Parameters of the shared client, kept per thread. A query is executed on
+     * the thread setting its parameters, and Jena sets {@link #CONNECTION_WAIT}
+     * before the other ones, so the parameters of the thread are reset to the
+     * defaults at that point. Jena waits 10 seconds for a pooled connection,
+     * the client waits {@link EEASettings#SPARQL_CONNECTION_WAIT_SECONDS}: a
+     * query queued behind the queries of other rivers is not a failure of the
+     * endpoint.
+     */
+    static final class QueryParams extends org.apache.http.params.AbstractHttpParams {
+
+        private final ThreadLocal<org.apache.http.params.BasicHttpParams> params =
+                ThreadLocal.withInitial(QueryParams::createDefaults);
+
+        private static org.apache.http.params.BasicHttpParams createDefaults() {
+            org.apache.http.params.BasicHttpParams defaults = new org.apache.http.params.BasicHttpParams();
+            org.apache.http.impl.client.DefaultHttpClient.setDefaultHttpParams(defaults);
+            return defaults;
+        }
+
+        @Override
+        public Object getParameter(String name) {
+            return params.get().getParameter(name);
+        }
+
+        @Override
+        public org.apache.http.params.HttpParams setParameter(String name, Object value) {
+            if (CONNECTION_WAIT.equals(name)) {
+                // A new query starts on this thread
+                org.apache.http.params.BasicHttpParams current = createDefaults();
+                current.setLongParameter(CONNECTION_WAIT,
+                        TimeUnit.SECONDS.toMillis(EEASettings.SPARQL_CONNECTION_WAIT_SECONDS));
+                params.set(current);
+                return this;
+            }
+            params.get().setParameter(name, value);
+            return this;
+        }
+
+        @Override
+        public boolean removeParameter(String name) {
+            return params.get().removeParameter(name);
+        }
+
+        @Override
+        public org.apache.http.params.HttpParams copy() {
+            return params.get().copy();
+        }
+
+        @Override
+        public Set<String> getNames() {
+            return params.get().getNames();
+        }
+    }
+}
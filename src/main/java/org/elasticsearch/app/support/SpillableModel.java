@@ -0,0 +1,141 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.tdb.TDB;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.elasticsearch.app.logging.ESLogger;
+import org.elasticsearch.app.logging.Loggers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Harvested model kept in memory up to a number of triples and moved to a
+ * temporary TDB store on disk once it grows beyond it. The subjects of a
+ * spilled model are then read back from disk while indexing.
+ * <p>
+ * The model is filled as a {@link StreamRDF} and read with {@link #getModel()}
+ * once all the triples were received. {@link #close()} deletes the store.
+ */
+public class SpillableModel implements StreamRDF, AutoCloseable {
+
+    private final ESLogger logger = Loggers.getLogger(SpillableModel.class);
+
+    private final long maxInMemoryTriples;
+    private final File spillDirectory;
+
+    private Model model = ModelFactory.createDefaultModel();
+    private Dataset dataset;
+    private File storeDirectory;
+    private boolean spillFailed = false;
+
+    /**
+     * @param maxInMemoryTriples number of triples kept in memory, 0 to never
+     *                           spill to disk
+     * @param spillDirectory     directory receiving the temporary stores
+     */
+    public SpillableModel(long maxInMemoryTriples, File spillDirectory) {
+        this.maxInMemoryTriples = maxInMemoryTriples;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void triple(Triple triple) {
+        model.getGraph().add(triple);
+        if (dataset == null && !spillFailed && maxInMemoryTriples > 0 && model.size() > maxInMemoryTriples) {
+            spill();
+        }
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void base(String base) {
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+    }
+
+    @Override
+    public synchronized void finish() {
+        if (dataset != null) {
+            TDB.sync(dataset);
+        }
+    }
+
+    /**
+     * @return the model holding the received triples, in memory or on disk
+     */
+    public synchronized Model getModel() {
+        return model;
+    }
+
+    public synchronized boolean isSpilled() {
+        return dataset != null;
+    }
+
+    private void spill() {
+        try {
+            storeDirectory = Files.createTempDirectory(spillDirectory.toPath(), "harvest-").toFile();
+        } catch (IOException e) {
+            logger.error("Could not create a store in [{}], the model is kept in memory: {}",
+                    spillDirectory, e.getLocalizedMessage());
+            // Do not try again for every triple
+            spillFailed = true;
+            return;
+        }
+        logger.info("Model exceeds {} triples, moving it to [{}]", maxInMemoryTriples, storeDirectory);
+        dataset = TDBFactory.createDataset(storeDirectory.getAbsolutePath());
+        Model stored = dataset.getDefaultModel();
+        stored.add(model);
+        model.close();
+        model = stored;
+    }
+
+    /**
+     * Releases the model and deletes the store on disk, if any
+     */
+    @Override
+    public synchronized void close() {
+        model.close();
+        if (dataset == null) return;
+        TDBFactory.release(dataset);
+        dataset = null;
+        if (storeDirectory == null) return;
+        try {
+            Files.walkFileTree(storeDirectory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not delete the store [{}]: {}", storeDirectory, e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link StreamRDF} sink grouping a triple stream into per-subject groups.
+ * <p>
+ * At most {@link #window} subjects are kept open at once. When a new subject
+ * arrives and the window is full, the least recently touched subject is
+ * considered complete and handed over to the {@link SubjectHandler}. Results
+ * of CONSTRUCT queries ordered by subject are usually serialized subject by
+ * subject, so a small window is enough to keep every subject in one group.
+ * <p>
+ * Nothing in SPARQL guarantees that order though. The hashes of the subjects
+ * handed over are kept, and a subject arriving again once handed over fails
+ * the stream with a {@link SubjectReopenedException}: indexing it again from
+ * its remaining triples would replace its complete document.
+ */
+public class SubjectGroupingStream implements StreamRDF {
+
+    /**
+     * Receives the triples of a subject once the subject is complete.
+     */
+    public interface SubjectHandler {
+        void subject(Node subject, List<Triple> triples);
+    }
+
+    /**
+     * Thrown when the triples of a subject arrive after the subject was
+     * handed over.
+     */
+    public static class SubjectReopenedException extends RuntimeException {
+
+        public SubjectReopenedException(Node subject) {
+            super("Subject " + subject + " received again after it was indexed");
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int window;
+    private final SubjectHandler handler;
+    private final LinkedHashMap<Node, List<Triple>> openSubjects;
+    /* 64 bit hashes of the subjects handed over */
+    private final Set<Long> completedSubjects = new HashSet<>();
+
+    private long triples = 0;
+    private long subjects = 0;
+
+    public SubjectGroupingStream(int window, SubjectHandler handler) {
+        this.window = Math.max(1, window);
+        this.handler = handler;
+        this.openSubjects = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void triple(Triple triple) {
+        triples++;
+        Node subject = triple.getSubject();
+        List<Triple> group = openSubjects.get(subject);
+        if (group == null) {
+            if (completedSubjects.contains(hash(subject))) {
+                throw new SubjectReopenedException(subject);
+            }
+            if (openSubjects.size() >= window) {
+                flushEldest();
+            }
+            group = new ArrayList<>();
+            openSubjects.put(subject, group);
+        }
+        group.add(triple);
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void base(String base) {
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+    }
+
+    /**
+     * Hands over the open subjects missing from the given ones, which are
+     * kept open. Results ordered by subject and read in pages only continue
+     * the subjects open at the end of the previous page, so the subjects of
+     * that page missing from the next one are complete.
+     *
+     * @param continued subjects of the next part of the results
+     */
+    public synchronized void completeExcept(Set<Node> continued) {
+        Iterator<Map.Entry<Node, List<Triple>>> it = openSubjects.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Node, List<Triple>> open = it.next();
+            if (continued.contains(open.getKey())) continue;
+            it.remove();
+            complete(open.getKey(), open.getValue());
+        }
+    }
+
+    /**
+     * Hands over all the subjects still open.
+     */
+    @Override
+    public synchronized void finish() {
+        while (!openSubjects.isEmpty()) {
+            flushEldest();
+        }
+    }
+
+    private void flushEldest() {
+        Iterator<Map.Entry<Node, List<Triple>>> it = openSubjects.entrySet().iterator();
+        Map.Entry<Node, List<Triple>> eldest = it.next();
+        it.remove();
+        complete(eldest.getKey(), eldest.getValue());
+    }
+
+    private void complete(Node subject, List<Triple> group) {
+        completedSubjects.add(hash(subject));
+        subjects++;
+        handler.subject(subject, group);
+    }
+
+    private static long hash(Node subject) {
+        byte[] bytes = subject.toString(false).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.wrap(md5.get().digest(bytes)).getLong();
+    }
+
+    public synchronized long getTripleCount() {
+        return triples;
+    }
+
+    public synchronized long getSubjectCount() {
+        return subjects;
+    }
+}
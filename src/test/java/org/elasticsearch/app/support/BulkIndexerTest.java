@@ -0,0 +1,301 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BulkIndexerTest {
+
+    private static final String TITLE = "http://purl.org/dc/terms/title";
+    private static final String SUBJECT = "http://purl.org/dc/terms/subject";
+
+    /**
+     * Records the documents sent instead of sending them, and answers from
+     * another thread as ES does.
+     */
+    private static class RecordingBulkIndexer extends BulkIndexer {
+
+        private final ExecutorService responder = Executors.newSingleThreadExecutor();
+        private final Map<String, String> documents = new HashMap<>();
+
+        RecordingBulkIndexer(int maxActions) {
+            super(null, "index", "type", new BulkSizeController(1, maxActions, 0, false, 0), 4,
+                    BackoffPolicy.noBackoff());
+        }
+
+        @Override
+        void execute(BulkRequest request, ActionListener<BulkResponse> listener) {
+            synchronized (documents) {
+                for (DocWriteRequest<?> docRequest : request.requests()) {
+                    String previous = documents.put(docRequest.id(),
+                            ((IndexRequest) docRequest).source().utf8ToString());
+                    assertNull("Sent twice: " + docRequest.id(), previous);
+                }
+            }
+            responder.submit(() -> listener.onResponse(new BulkResponse(new BulkItemResponse[0], 1)));
+        }
+    }
+
+    /**
+     * Answers every bulk sent with the {@link Responder}, from another thread
+     * as ES does, and records the ids of the documents sent.
+     */
+    private static class ScriptedBulkIndexer extends BulkIndexer {
+
+        interface Responder {
+            void respond(BulkRequest request, int attempt, ActionListener<BulkResponse> listener);
+        }
+
+        private final ExecutorService responder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-responder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Responder script;
+        private final List<String> sent = new ArrayList<>();
+        private int attempts = 0;
+
+        ScriptedBulkIndexer(int maxActions, int maxInFlight, BackoffPolicy backoffPolicy, Responder script) {
+            super(null, "index", "type", new BulkSizeController(1, maxActions, 0, false, 0), maxInFlight,
+                    backoffPolicy);
+            this.script = script;
+        }
+
+        @Override
+        void execute(BulkRequest request, ActionListener<BulkResponse> listener) {
+            int attempt;
+            synchronized (sent) {
+                attempt = attempts++;
+                for (DocWriteRequest<?> docRequest : request.requests()) {
+                    sent.add(docRequest.id());
+                }
+            }
+            responder.submit(() -> script.respond(request, attempt, listener));
+        }
+
+        List<String> getSent() {
+            synchronized (sent) {
+                return new ArrayList<>(sent);
+            }
+        }
+    }
+
+    private static HashMap<String, HashMap<String, Object>> document(String title) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put("title", title);
+        HashMap<String, HashMap<String, Object>> jsonMaps = new HashMap<>();
+        jsonMaps.put("en", fields);
+        return jsonMaps;
+    }
+
+    private static BulkResponse success() {
+        return new BulkResponse(new BulkItemResponse[0], 1);
+    }
+
+    /* Rejects the given items of the bulk because ES is overloaded */
+    private static BulkResponse rejected(BulkRequest request, int... items) {
+        BulkItemResponse[] responses = new BulkItemResponse[items.length];
+        for (int i = 0; i < items.length; i++) {
+            DocWriteRequest<?> docRequest = request.requests().get(items[i]);
+            responses[i] = new BulkItemResponse(items[i], DocWriteRequest.OpType.INDEX,
+                    new BulkItemResponse.Failure("index", "type", docRequest.id(),
+                            new Exception("rejected"), RestStatus.TOO_MANY_REQUESTS));
+        }
+        return new BulkResponse(responses, 1);
+    }
+
+    private static BackoffPolicy retries(long delayMillis, int retries) {
+        return BackoffPolicy.constantBackoff(TimeValue.timeValueMillis(delayMillis), retries);
+    }
+
+    @Test(timeout = 10000)
+    public void testRejectedItemsAreSentAgain() {
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(2, 1, retries(10, 2),
+                (request, attempt, listener) ->
+                        listener.onResponse(attempt == 0 ? rejected(request, 1) : success()));
+        bulkIndexer.add("http://example.org/a", document("A"));
+        bulkIndexer.add("http://example.org/b", document("B"));
+        bulkIndexer.close();
+
+        assertEquals(Arrays.asList("http://example.org/a@en", "http://example.org/b@en",
+                "http://example.org/b@en"), bulkIndexer.getSent());
+        assertTrue(bulkIndexer.getUrisWithESErrors().isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testExhaustedRetriesAreRecorded() {
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(2, 1, retries(10, 2),
+                (request, attempt, listener) -> listener.onResponse(rejected(request, 0)));
+        bulkIndexer.add("http://example.org/a", document("A"));
+        bulkIndexer.add("http://example.org/b", document("B"));
+        bulkIndexer.close();
+
+        // Sent once, then retried twice
+        assertEquals(4, bulkIndexer.getSent().size());
+        List<String> errors = bulkIndexer.getUrisWithESErrors();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("http://example.org/a@en "));
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedBulkIsSentAgainOnConnectionFailure() {
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(1, 1, retries(10, 2),
+                (request, attempt, listener) -> {
+                    if (attempt == 0) {
+                        listener.onFailure(new IOException("Connection reset"));
+                    } else {
+                        listener.onResponse(success());
+                    }
+                });
+        bulkIndexer.add("http://example.org/a", document("A"));
+        bulkIndexer.close();
+
+        assertEquals(2, bulkIndexer.getSent().size());
+        assertTrue(bulkIndexer.getUrisWithESErrors().isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedBulkIsNotSentAgainOnOtherFailures() {
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(1, 1, retries(10, 2),
+                (request, attempt, listener) -> listener.onFailure(new IllegalArgumentException("Bad request")));
+        bulkIndexer.add("http://example.org/a", document("A"));
+        bulkIndexer.close();
+
+        assertEquals(1, bulkIndexer.getSent().size());
+        assertEquals(1, bulkIndexer.getUrisWithESErrors().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testCancelDropsRetries() throws Exception {
+        CountDownLatch answered = new CountDownLatch(1);
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(1, 1, retries(200, 5),
+                (request, attempt, listener) -> {
+                    listener.onResponse(rejected(request, 0));
+                    answered.countDown();
+                });
+        bulkIndexer.add("http://example.org/a", document("A"));
+        assertTrue(answered.await(5, TimeUnit.SECONDS));
+        bulkIndexer.cancel();
+        bulkIndexer.add("http://example.org/b", document("B"));
+        bulkIndexer.close();
+
+        assertEquals(1, bulkIndexer.getSent().size());
+        List<String> errors = bulkIndexer.getUrisWithESErrors();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).endsWith(" cancelled"));
+    }
+
+    @Test(timeout = 10000)
+    public void testBulksInFlightAreLimited() throws Exception {
+        BlockingQueue<ActionListener<BulkResponse>> held = new LinkedBlockingQueue<>();
+        ScriptedBulkIndexer bulkIndexer = new ScriptedBulkIndexer(1, 2, BackoffPolicy.noBackoff(),
+                (request, attempt, listener) -> held.add(listener));
+
+        Thread adding = new Thread(() -> {
+            for (int i = 0; i < 4; i++) {
+                bulkIndexer.add("http://example.org/" + i, document("Resource " + i));
+            }
+        });
+        adding.start();
+        // The third bulk waits for one of the first two to complete
+        ActionListener<BulkResponse> first = held.take();
+        ActionListener<BulkResponse> second = held.take();
+        Thread.sleep(200);
+        assertEquals(2, bulkIndexer.getSent().size());
+        assertTrue(adding.isAlive());
+
+        first.onResponse(success());
+        held.take().onResponse(success());
+        adding.join();
+        assertEquals(4, bulkIndexer.getSent().size());
+
+        Thread closing = new Thread(bulkIndexer::close);
+        closing.start();
+        Thread.sleep(200);
+        assertTrue("close() returned before the bulks completed", closing.isAlive());
+
+        second.onResponse(success());
+        held.take().onResponse(success());
+        closing.join();
+        assertTrue(bulkIndexer.getUrisWithESErrors().isEmpty());
+    }
+
+    @Test
+    public void testParallelBuildSendsSameDocuments() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        Property title = model.createProperty(TITLE);
+        Property subject = model.createProperty(SUBJECT);
+        for (int i = 0; i < 3000; i++) {
+            Resource rs = model.createResource("http://example.org/resource/" + i);
+            rs.addProperty(title, model.createLiteral("Resource " + i, "en"));
+            rs.addProperty(title, model.createLiteral("Ressource " + i, "fr"));
+            rs.addProperty(subject, model.createResource("http://example.org/topic/" + (i % 7)));
+        }
+        Map<String, Object> normalizeProp = new HashMap<>();
+        normalizeProp.put(TITLE, "title");
+        NormalizationPlan plan = NormalizationPlan.builder()
+                .addUriForResource(true)
+                .normalizeProp(normalizeProp)
+                .addCounting(true)
+                .compile();
+        LabelIndex labels = LabelIndex.build(model, plan.getLabelProperties());
+
+        RecordingBulkIndexer sequential = index(model, plan, labels, 1);
+        RecordingBulkIndexer parallel = index(model, plan, labels, 8);
+
+        assertEquals(3000, sequential.getResourceCount());
+        assertEquals(sequential.getResourceCount(), parallel.getResourceCount());
+        assertEquals(6000, sequential.documents.size());
+        assertEquals(sequential.documents, parallel.documents);
+        assertTrue(parallel.getUrisWithESErrors().isEmpty());
+    }
+
+    /* Builds the documents of the model on the given number of threads, as the harvest does */
+    private static RecordingBulkIndexer index(Model model, NormalizationPlan plan, LabelIndex labels,
+                                              int parallelism) throws Exception {
+        List<Resource> resources = model.listSubjects().toList();
+        Collections.shuffle(resources);
+        RecordingBulkIndexer bulkIndexer = new RecordingBulkIndexer(50);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> resources.parallelStream().forEach(rs -> {
+                ESNormalizer normalizer = new ESNormalizer(rs, model, false, null, plan, labels);
+                normalizer.process();
+                bulkIndexer.add(rs.toString(), normalizer.getJsonMaps());
+            })).get();
+        } finally {
+            pool.shutdown();
+        }
+        bulkIndexer.close();
+        bulkIndexer.responder.shutdown();
+        return bulkIndexer;
+    }
+}
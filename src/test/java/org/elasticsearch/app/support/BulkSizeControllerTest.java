@@ -0,0 +1,41 @@
+package org.elasticsearch.app.support;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkSizeControllerTest {
+
+    @Test
+    public void testFixed() {
+        BulkSizeController controller = new BulkSizeController(50, 1000, 1024, false, 2000);
+        assertEquals(1000, controller.getActions());
+        assertFalse(controller.isFull(999, 1000));
+        assertTrue(controller.isFull(1000, 10));
+        assertTrue(controller.isFull(3, 1024));
+
+        controller.onBulkCompleted(10000, true);
+        assertEquals(1000, controller.getActions());
+        assertFalse(new BulkSizeController(50, 1000, 0, false, 2000).isFull(1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAdaptive() {
+        BulkSizeController controller = new BulkSizeController(50, 1000, 0, true, 2000);
+        assertEquals(250, controller.getActions());
+
+        controller.onBulkCompleted(100, false);
+        assertEquals(300, controller.getActions());
+        controller.onBulkCompleted(3000, false);
+        assertEquals(150, controller.getActions());
+        controller.onBulkCompleted(100, true);
+        assertEquals(75, controller.getActions());
+        controller.onBulkCompleted(100, true);
+        assertEquals(50, controller.getActions());
+
+        for (int i = 0; i < 100; i++) {
+            controller.onBulkCompleted(100, false);
+        }
+        assertEquals(1000, controller.getActions());
+    }
+}
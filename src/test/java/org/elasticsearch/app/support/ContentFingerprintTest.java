@@ -0,0 +1,69 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ContentFingerprintTest {
+
+    private static Triple triple(String subject, String value) {
+        return new Triple(
+                NodeFactory.createURI("http://example.org/" + subject),
+                NodeFactory.createURI("http://purl.org/dc/terms/title"),
+                NodeFactory.createLiteral(value));
+    }
+
+    @Test
+    public void testOrderIndependent() {
+        ContentFingerprint first = new ContentFingerprint("settings");
+        first.add(triple("a", "A"));
+        first.add(triple("b", "B"));
+
+        ContentFingerprint second = new ContentFingerprint("settings");
+        second.add(triple("b", "B"));
+        second.add(triple("a", "A"));
+
+        assertEquals(first.value(), second.value());
+        assertEquals(2, first.getCount());
+    }
+
+    @Test
+    public void testChangesWithDataAndSettings() {
+        ContentFingerprint original = new ContentFingerprint("settings");
+        original.add(triple("a", "A"));
+
+        ContentFingerprint modified = new ContentFingerprint("settings");
+        modified.add(triple("a", "A2"));
+        assertNotEquals(original.value(), modified.value());
+
+        ContentFingerprint otherSettings = new ContentFingerprint("other");
+        otherSettings.add(triple("a", "A"));
+        assertNotEquals(original.value(), otherSettings.value());
+    }
+
+    @Test
+    public void testSettingsHashIgnoresKeyOrder() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("endpoint", "http://example.org/sparql");
+        first.put("queryType", "construct");
+        Map<String, Object> second = new HashMap<>();
+        second.put("queryType", "construct");
+        second.put("endpoint", "http://example.org/sparql");
+
+        assertEquals(ContentFingerprint.ofSettings(first), ContentFingerprint.ofSettings(second));
+    }
+
+    @Test
+    public void testIncludesFormatVersion() {
+        ContentFingerprint fingerprint = new ContentFingerprint("settings");
+        fingerprint.add(triple("a", "A"));
+
+        assertTrue(fingerprint.value().endsWith("-v" + ContentFingerprint.FORMAT_VERSION));
+    }
+}
@@ -0,0 +1,50 @@
+package org.elasticsearch.app.support;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DocumentWriterTest {
+
+    @Test
+    public void testSameAsXContent() throws Exception {
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("about", new ArrayList<>(Arrays.asList("http://example.org/a")));
+        document.put("language", "en");
+        document.put("title", new ArrayList<>(Arrays.asList("Water \"quality\"", "Čistota vody\n")));
+        document.put("count", new ArrayList<>(Arrays.asList(3, 4L, 2.5, 1.5f)));
+        document.put("big", new ArrayList<>(Arrays.asList(new BigDecimal("1.25"), new BigInteger("12345678901234567890"))));
+        document.put("flag", new ArrayList<>(Arrays.asList(true)));
+        document.put("empty", new ArrayList<>());
+
+        byte[] written = DocumentWriter.write(document);
+        String expected = BytesReference.bytes(XContentFactory.jsonBuilder().map(document)).utf8ToString();
+
+        assertEquals(expected, new String(written, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBufferReused() {
+        Map<String, Object> large = new LinkedHashMap<>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 300000; i++) {
+            value.append("abcd");
+        }
+        large.put("text", value.toString());
+        Map<String, Object> small = new LinkedHashMap<>();
+        small.put("text", "a");
+
+        assertTrue(DocumentWriter.write(large).length > 1024 * 1024);
+        assertEquals("{\"text\":\"a\"}", new String(DocumentWriter.write(small), StandardCharsets.UTF_8));
+    }
+}
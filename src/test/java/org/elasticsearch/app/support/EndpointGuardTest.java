@@ -0,0 +1,111 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.elasticsearch.app.EEASettings;
+import org.elasticsearch.app.api.server.exceptions.EndpointUnavailable;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EndpointGuardTest {
+
+    private static final String ENDPOINT = "http://localhost/sparql";
+
+    @Test
+    public void testRetriesServerErrors() {
+        EndpointGuard guard = new EndpointGuard(ENDPOINT, 3, 0, 0, 60000, () -> true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = guard.call(() -> {
+            if (attempts.incrementAndGet() < 3) throw new QueryExceptionHTTP(503);
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertFalse(guard.isOpen());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() {
+        EndpointGuard guard = new EndpointGuard(ENDPOINT, 3, 0, 0, 60000, () -> true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            guard.call(() -> {
+                attempts.incrementAndGet();
+                throw new QueryExceptionHTTP(400);
+            });
+            fail();
+        } catch (QueryExceptionHTTP e) {
+            assertEquals(400, e.getResponseCode());
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(0.0, guard.getErrorRate(), 0.0);
+    }
+
+    @Test
+    public void testCircuitOpensAndCloses() throws InterruptedException {
+        EndpointGuard guard = new EndpointGuard(ENDPOINT, 0, 0, 0, 50, () -> true);
+        for (int i = 0; i < EEASettings.CIRCUIT_CONSECUTIVE_FAILURES; i++) {
+            try {
+                guard.call(() -> {
+                    throw new QueryExceptionHTTP(500);
+                });
+            } catch (QueryExceptionHTTP ignored) {
+            }
+        }
+        assertTrue(guard.isOpen());
+
+        try {
+            guard.call(() -> "not sent");
+            fail();
+        } catch (EndpointUnavailable ignored) {
+        }
+
+        Thread.sleep(guard.retryDelayMillis() + 10);
+        assertEquals("trial", guard.call(() -> "trial"));
+        assertFalse(guard.isOpen());
+    }
+
+    @Test
+    public void testOnlyTransientErrorsAreRetriable() {
+        assertTrue(EndpointGuard.isRetriable(new QueryExceptionHTTP(503)));
+        assertTrue(EndpointGuard.isRetriable(new QueryExceptionHTTP(429)));
+        assertTrue(EndpointGuard.isRetriable(new QueryExceptionHTTP(new ConnectException("refused"))));
+        assertFalse(EndpointGuard.isRetriable(new QueryExceptionHTTP(404)));
+        assertFalse(EndpointGuard.isRetriable(new NullPointerException()));
+        assertFalse(EndpointGuard.isRetriable(new IllegalStateException("unreadable result")));
+    }
+
+    @Test
+    public void testFailedProbeKeepsCircuitOpen() throws InterruptedException {
+        AtomicInteger probes = new AtomicInteger();
+        EndpointGuard guard = new EndpointGuard(ENDPOINT, 0, 0, 0, 50, () -> {
+            probes.incrementAndGet();
+            throw new QueryExceptionHTTP(503);
+        });
+        for (int i = 0; i < EEASettings.CIRCUIT_CONSECUTIVE_FAILURES; i++) {
+            try {
+                guard.call(() -> {
+                    throw new QueryExceptionHTTP(500);
+                });
+            } catch (QueryExceptionHTTP ignored) {
+            }
+        }
+        assertTrue(guard.isOpen());
+
+        Thread.sleep(guard.retryDelayMillis() + 10);
+        try {
+            guard.call(() -> "not sent");
+            fail();
+        } catch (EndpointUnavailable ignored) {
+        }
+        assertEquals(1, probes.get());
+        assertTrue(guard.isOpen());
+        assertTrue(guard.retryDelayMillis() > 50);
+    }
+}
@@ -0,0 +1,47 @@
+package org.elasticsearch.app.support;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FieldValuesTest {
+
+    @Test
+    public void testInsertionOrderWithoutDuplicates() {
+        FieldValues values = new FieldValues(0);
+        values.addAll(Arrays.asList("b", "a", "b", 1, "a", 1));
+
+        assertEquals(Arrays.asList("b", "a", 1), new ArrayList<>(values));
+        assertFalse(values.isTruncated());
+    }
+
+    @Test
+    public void testCap() {
+        FieldValues values = new FieldValues(2);
+        assertTrue(values.add("a"));
+        assertTrue(values.add("b"));
+        assertFalse(values.add("a"));
+        assertFalse(values.isTruncated());
+        assertFalse(values.add("c"));
+
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(values));
+        assertTrue(values.isTruncated());
+    }
+
+    @Test
+    public void testCountIncludesDroppedValues() {
+        FieldValues values = new FieldValues(2);
+        values.addAll(Arrays.asList("a", "b", "c", "d", "c", "a"));
+
+        assertEquals(2, values.size());
+        assertEquals(4, values.getCount());
+
+        FieldValues own = new FieldValues(2);
+        own.addAll(Arrays.asList("a", "e", "f"));
+        JoinedValues joined = new JoinedValues(values, own);
+        assertEquals(6, joined.getCount());
+    }
+}
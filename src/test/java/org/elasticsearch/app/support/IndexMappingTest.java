@@ -0,0 +1,71 @@
+package org.elasticsearch.app.support;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexMappingTest {
+
+    private static final String TITLE = "http://purl.org/dc/terms/title";
+    private static final String ISSUED = "http://purl.org/dc/terms/issued";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBuild() {
+        Map<String, Object> normalizeProp = new HashMap<>();
+        normalizeProp.put(TITLE, Arrays.asList("title", "label"));
+        Map<String, Object> normalizeMissing = new HashMap<>();
+        normalizeMissing.put("status", "none");
+        NormalizationPlan plan = NormalizationPlan.builder()
+                .addUriForResource(true)
+                .propList(Collections.singletonList(ISSUED), true)
+                .normalizeProp(normalizeProp)
+                .normalizeMissing(normalizeMissing)
+                .prefixes(PrefixRegistry.withBuiltIns(null))
+                .addCounting(true)
+                .compile();
+
+        Map<String, Object> fieldTypes = new HashMap<>();
+        fieldTypes.put(ISSUED, "date");
+        fieldTypes.put("status", Collections.singletonMap("type", "keyword"));
+
+        Map<String, Object> mapping = IndexMapping.build(plan, fieldTypes, "keyword", "strict");
+        assertEquals("strict", mapping.get("dynamic"));
+        Map<String, Object> properties = (Map<String, Object>) mapping.get("properties");
+
+        assertEquals(Collections.singletonMap("type", "keyword"), properties.get("about"));
+        assertEquals(Collections.singletonMap("type", "keyword"), properties.get("title"));
+        assertEquals(Collections.singletonMap("type", "keyword"), properties.get("label"));
+        assertEquals(Collections.singletonMap("type", "date"), properties.get("dcterms:issued"));
+        assertEquals(Collections.singletonMap("type", "long"), properties.get("items_count_dcterms:issued"));
+        assertEquals(Collections.singletonMap("type", "keyword"), properties.get("status"));
+        assertFalse(properties.containsKey("translations"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testObjectPaths() {
+        NormalizationPlan plan = NormalizationPlan.builder()
+                .propList(Collections.singletonList(TITLE), true)
+                .labelRules(new HashMap<>())
+                .nestedLanguages(true)
+                .compile();
+
+        Map<String, Object> mapping = IndexMapping.build(plan, Collections.singletonMap(ISSUED, "date"),
+                IndexMapping.TEXT_KEYWORD, "true");
+        Map<String, Object> properties = (Map<String, Object>) mapping.get("properties");
+
+        // "http://purl.org/dc/terms/..." is the object "http://purl" holding "org/dc/terms/..."
+        Map<String, Object> purl = (Map<String, Object>) ((Map<String, Object>) properties.get("http://purl"))
+                .get("properties");
+        assertEquals("text", ((Map<String, Object>) purl.get("org/dc/terms/title")).get("type"));
+        assertEquals(Collections.singletonMap("type", "date"), purl.get("org/dc/terms/issued"));
+        assertFalse(properties.containsKey("about"));
+        assertEquals(true, ((Map<String, Object>) properties.get("translations")).get("dynamic"));
+    }
+}
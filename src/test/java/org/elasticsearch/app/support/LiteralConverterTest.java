@@ -0,0 +1,61 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import org.elasticsearch.app.EEASettings;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class LiteralConverterTest {
+
+    private final Model model = ModelFactory.createDefaultModel();
+
+    @Test
+    public void testConvert() {
+        assertEquals(42, LiteralConverter.convert(model.createTypedLiteral("42", XSDDatatype.XSDint)));
+        assertEquals(new BigInteger("12345678901234567890"),
+                LiteralConverter.convert(model.createTypedLiteral("12345678901234567890", XSDDatatype.XSDinteger)));
+        assertEquals(true, LiteralConverter.convert(model.createTypedLiteral("true", XSDDatatype.XSDboolean)));
+        assertEquals("n/a", LiteralConverter.convert(model.createTypedLiteral("n/a", XSDDatatype.XSDinteger)));
+
+        assertEquals("2021-03-04T05:06:00.000+01:00",
+                LiteralConverter.convert(model.createTypedLiteral("2021-03-04T05:06:00+01:00", XSDDatatype.XSDdateTime)));
+        assertEquals("2021-03-04T05:06:07.500Z",
+                LiteralConverter.convert(model.createTypedLiteral("2021-03-04T05:06:07.5Z", XSDDatatype.XSDdateTime)));
+        assertEquals("2021-03-04T05:06:07.000",
+                LiteralConverter.convert(model.createTypedLiteral("2021-03-04T05:06:07", XSDDatatype.XSDdateTime)));
+        assertEquals("2021-03-04",
+                LiteralConverter.convert(model.createTypedLiteral("2021-03-04+02:00", XSDDatatype.XSDdate)));
+        assertEquals("2021-13-45",
+                LiteralConverter.convert(model.createTypedLiteral("2021-13-45", XSDDatatype.XSDdate)));
+
+        assertEquals("say 'hi'", LiteralConverter.convert(model.createLiteral(" say \"hi\"\n", "en")));
+        assertEquals("2021", LiteralConverter.convert(model.createTypedLiteral("2021", XSDDatatype.XSDgYear)));
+    }
+
+    @Test
+    public void testParseForJson() {
+        String[] texts = {
+                "", "  plain  ", "line\r\nbreak", "tab\there", "\"quoted\"", "it\\'s", "say \\\"x\\\"",
+                "\\x4f and \\xZZ", "end\\", "\\x4", "back\\slash", "\\\\x41", "mixed \"\\x0a\t\\\n",
+                "Čistota vody \\u00e9"
+        };
+        for (String text : texts) {
+            assertEquals(text, reference(text), EEASettings.parseForJson(text));
+        }
+    }
+
+    /* The former regular expression implementation */
+    private static String reference(String text) {
+        return text.trim().replaceAll("[\n\r]", " ")
+                .replace('"', '\'')
+                .replace("\t", "    ")
+                .replace("\\'", "'")
+                .replaceAll("\\\\x[a-fA-F0-9][a-fA-F0-9]", "_")
+                .replace("\\", "\\\\");
+    }
+}
@@ -0,0 +1,165 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NormalizationPlanTest {
+
+    private static final String TITLE = "http://purl.org/dc/terms/title";
+    private static final String SUBJECT = "http://purl.org/dc/terms/subject";
+    private static final String HIDDEN = "http://example.org/hidden";
+
+    private static NormalizationPlan plan(Map<String, Object> normalizeProp,
+                                          Map<String, Set<String>> blackMap,
+                                          Map<String, Object> normalizeMissing) {
+        Map<String, String> normalizeObj = new HashMap<>();
+        normalizeObj.put("old", "new");
+        return NormalizationPlan.builder()
+                .addUriForResource(true)
+                .propList(Collections.singletonList(HIDDEN), false)
+                .normalizeProp(normalizeProp)
+                .blackMap(blackMap)
+                .normalizeObj(normalizeObj)
+                .normalizeMissing(normalizeMissing)
+                .addCounting(true)
+                .compile();
+    }
+
+    @Test
+    public void testActions() {
+        Map<String, Object> normalizeProp = new HashMap<>();
+        normalizeProp.put(TITLE, "title");
+        normalizeProp.put(SUBJECT, Arrays.asList("subject", "topic"));
+        Map<String, Set<String>> blackMap = new HashMap<>();
+        blackMap.put(SUBJECT, new HashSet<>(Collections.singletonList("skip")));
+        NormalizationPlan plan = plan(normalizeProp, blackMap, new HashMap<>());
+
+        assertArrayEquals(new String[]{"title"}, plan.action(TITLE).getTargets());
+        assertArrayEquals(new String[]{"subject", "topic"}, plan.action(SUBJECT).getTargets());
+        assertArrayEquals(new String[]{"http://example.org/p"}, plan.action("http://example.org/p").getTargets());
+        assertTrue(plan.action(TITLE).isIndexed());
+        assertFalse(plan.action(HIDDEN).isIndexed());
+        assertFalse(plan.action(SUBJECT).accepts("skip"));
+        assertTrue(plan.action(SUBJECT).accepts("keep"));
+        assertEquals("new", plan.rewrite("old"));
+        assertEquals(3, plan.rewrite(3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNormalizer() {
+        Map<String, Object> normalizeProp = new HashMap<>();
+        normalizeProp.put(SUBJECT, Arrays.asList("subject", "topic"));
+        Map<String, Set<String>> blackMap = new HashMap<>();
+        blackMap.put(SUBJECT, new HashSet<>(Collections.singletonList("skip")));
+        Map<String, Object> normalizeMissing = new HashMap<>();
+        normalizeMissing.put("topic", "none");
+        normalizeMissing.put("status", Arrays.asList("draft", "final"));
+        NormalizationPlan plan = plan(normalizeProp, blackMap, normalizeMissing);
+
+        Model model = ModelFactory.createDefaultModel();
+        Resource rs = model.createResource("http://example.org/a");
+        Property subject = model.createProperty(SUBJECT);
+        rs.addProperty(subject, "old");
+        rs.addProperty(subject, "skip");
+        rs.addProperty(subject, "other");
+        rs.addProperty(model.createProperty(HIDDEN), "hidden");
+
+        ESNormalizer normalizer = new ESNormalizer(rs, model, false, null, plan, LabelIndex.empty());
+        normalizer.process();
+        Map<String, Object> json = normalizer.getJsonMaps().get("");
+
+        assertEquals(Collections.singletonList("http://example.org/a"), new ArrayList<>((Collection<Object>) json.get("about")));
+        assertEquals(new HashSet<>(Arrays.asList("new", "other")), new HashSet<>((Collection<Object>) json.get("subject")));
+        assertEquals(new HashSet<>(Arrays.asList("new", "other")), new HashSet<>((Collection<Object>) json.get("topic")));
+        assertEquals(Arrays.asList("draft", "final"), new ArrayList<>((Collection<Object>) json.get("status")));
+        assertFalse(json.containsKey(HIDDEN));
+        assertEquals(2, json.get("items_count_subject"));
+        assertEquals(1, json.get("items_count_about"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLabelRules() {
+        Map<String, NormalizationPlan.LabelRule> labelRules = new HashMap<>();
+        labelRules.put(SUBJECT, new NormalizationPlan.LabelRule("http://example.org/concept/", TITLE));
+        NormalizationPlan plan = NormalizationPlan.builder()
+                .labelRules(labelRules)
+                .compile();
+
+        Model model = ModelFactory.createDefaultModel();
+        Resource rs = model.createResource("http://example.org/a");
+        Property subject = model.createProperty(SUBJECT);
+        rs.addProperty(subject, model.createResource("http://example.org/concept/water"));
+        rs.addProperty(subject, model.createResource("http://example.org/concept/air"));
+        rs.addProperty(subject, model.createResource("http://example.org/other/soil"));
+        model.createResource("http://example.org/concept/water").addProperty(model.createProperty(TITLE), "Water");
+        model.createResource("http://example.org/other/soil").addProperty(model.createProperty(TITLE), "Soil");
+
+        LabelIndex labels = LabelIndex.build(model, plan.getLabelProperties());
+        assertEquals(2, labels.size());
+
+        ESNormalizer normalizer = new ESNormalizer(rs, model, false, null, plan, labels);
+        normalizer.process();
+        Map<String, Object> json = normalizer.getJsonMaps().get("");
+
+        assertEquals(new HashSet<>(Arrays.asList("Water", "http://example.org/concept/air", "http://example.org/other/soil")),
+                new HashSet<>((Collection<Object>) json.get(SUBJECT)));
+    }
+
+    private static ESNormalizer multilingual(boolean nested) {
+        NormalizationPlan plan = NormalizationPlan.builder()
+                .addUriForResource(true)
+                .nestedLanguages(nested)
+                .compile();
+        Model model = ModelFactory.createDefaultModel();
+        Resource rs = model.createResource("http://example.org/a");
+        Property title = model.createProperty(TITLE);
+        rs.addProperty(title, "Water", "en");
+        rs.addProperty(title, "Voda", "cs");
+        rs.addProperty(title, "H2O");
+        ESNormalizer normalizer = new ESNormalizer(rs, model, false, null, plan, LabelIndex.empty());
+        normalizer.process();
+        return normalizer;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSplitLanguages() {
+        Map<String, HashMap<String, Object>> jsonMaps = multilingual(false).getJsonMaps();
+
+        assertEquals(new HashSet<>(Arrays.asList("en", "cs")), jsonMaps.keySet());
+        assertEquals(Arrays.asList("H2O", "Water"), new ArrayList<>((Collection<Object>) jsonMaps.get("en").get(TITLE)));
+        assertEquals(Arrays.asList("H2O", "Voda"), new ArrayList<>((Collection<Object>) jsonMaps.get("cs").get(TITLE)));
+        assertEquals("cs", jsonMaps.get("cs").get("language"));
+        assertSame(jsonMaps.get("en").get("about"), jsonMaps.get("cs").get("about"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNestedLanguages() {
+        Map<String, HashMap<String, Object>> jsonMaps = multilingual(true).getJsonMaps();
+
+        assertEquals(Collections.singleton(""), jsonMaps.keySet());
+        Map<String, Object> json = jsonMaps.get("");
+        assertEquals(Collections.singletonList("H2O"), new ArrayList<>((Collection<Object>) json.get(TITLE)));
+        assertEquals(Arrays.asList("cs", "en"), new ArrayList<>((Collection<Object>) json.get("language")));
+        Map<String, Map<String, Object>> translations = (Map<String, Map<String, Object>>) json.get(ESNormalizer.TRANSLATIONS);
+        assertEquals(Collections.singletonList("Voda"), new ArrayList<>((Collection<Object>) translations.get("cs").get(TITLE)));
+        assertFalse(translations.get("en").containsKey("language"));
+    }
+}
@@ -0,0 +1,40 @@
+package org.elasticsearch.app.support;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrefixRegistryTest {
+
+    @Test
+    public void testCompact() {
+        PrefixRegistry prefixes = PrefixRegistry.withBuiltIns(
+                Collections.singletonMap("ex", "http://example.org/ns#"));
+
+        assertEquals("skos:prefLabel", prefixes.compact("http://www.w3.org/2004/02/skos/core#prefLabel"));
+        assertEquals("dcterms:title", prefixes.compact("http://purl.org/dc/terms/title"));
+        assertEquals("ex:code", prefixes.compact("http://example.org/ns#code"));
+        assertEquals("http://example.org/other/code", prefixes.compact("http://example.org/other/code"));
+        assertEquals("http://purl.org/dc/terms/v1.2", prefixes.compact("http://purl.org/dc/terms/v1.2"));
+        assertEquals("title", prefixes.compact("title"));
+        assertEquals("http://purl.org/dc/terms/title", prefixes.expand("dcterms:title"));
+        assertEquals("http://purl.org/dc/terms/title", prefixes.expand("http://purl.org/dc/terms/title"));
+    }
+
+    @Test
+    public void testSettings() {
+        Map<String, Object> settings = new HashMap<>();
+        assertEquals("http://purl.org/dc/terms/title",
+                PrefixRegistry.fromSettings(settings).compact("http://purl.org/dc/terms/title"));
+
+        settings.put("compactFieldNames", true);
+        settings.put("prefixes", Collections.singletonMap("dct", "http://purl.org/dc/terms/"));
+        PrefixRegistry prefixes = PrefixRegistry.fromSettings(settings);
+        assertEquals("dct:title", prefixes.compact("http://purl.org/dc/terms/title"));
+        assertFalse(prefixes.getPrefixes().containsKey("dcterms"));
+    }
+}
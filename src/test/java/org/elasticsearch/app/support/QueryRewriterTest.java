@@ -0,0 +1,137 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QueryRewriterTest {
+
+    @Test
+    public void testSubjectVariable() {
+        assertEquals("res", QueryRewriter.subjectVariable(
+                QueryFactory.create("CONSTRUCT { ?res ?p ?o } WHERE { ?res ?p ?o }")));
+        assertEquals("s", QueryRewriter.subjectVariable(
+                QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o }")));
+    }
+
+    @Test
+    public void testPageIsOrderedBySubject() {
+        Query query = QueryFactory.create("CONSTRUCT { ?res ?p ?o } WHERE { ?res ?p ?o }");
+        Query page = QueryRewriter.page(query, "res", 2, 100);
+
+        assertEquals(200, page.getOffset());
+        assertEquals(100, page.getLimit());
+        assertTrue(QueryRewriter.isOrderedBy(page, "res"));
+        assertEquals(3, page.getOrderBy().size());
+        assertFalse(query.hasLimit());
+    }
+
+    @Test
+    public void testPageRespectsQueryLimit() {
+        Query query = QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY ?p LIMIT 250 OFFSET 10");
+
+        Query last = QueryRewriter.page(query, "s", 2, 100);
+        assertEquals(210, last.getOffset());
+        assertEquals(50, last.getLimit());
+
+        assertNull(QueryRewriter.page(query, "s", 3, 100));
+    }
+
+    @Test
+    public void testPageOrderIsTotal() {
+        Query query = QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY DESC(?p)");
+        Query page = QueryRewriter.page(query, "s", 0, 100);
+
+        assertEquals(3, page.getOrderBy().size());
+        assertEquals("p", page.getOrderBy().get(0).getExpression().getVarName());
+        assertEquals(Query.ORDER_DESCENDING, page.getOrderBy().get(0).getDirection());
+        assertEquals("s", page.getOrderBy().get(1).getExpression().getVarName());
+        assertEquals("o", page.getOrderBy().get(2).getExpression().getVarName());
+        assertEquals(1, query.getOrderBy().size());
+    }
+
+    @Test
+    public void testFirstSolution() {
+        Query page = QueryRewriter.page(
+                QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o OPTIONAL { ?o ?q ?x } }"), "s", 3, 100);
+        Query probe = QueryRewriter.firstSolution(page);
+
+        assertTrue(probe.isSelectType());
+        assertEquals(1, probe.getLimit());
+        assertEquals(300, probe.getOffset());
+        assertTrue(page.isConstructType());
+        assertEquals(100, page.getLimit());
+    }
+
+    @Test
+    public void testPartitionsAreFiltered() {
+        Query query = QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }");
+        assertTrue(QueryRewriter.canPartition(query, "s"));
+        assertFalse(QueryRewriter.canPartition(query, "x"));
+
+        String partition = QueryRewriter.partition(query, "s", 1, 4).toString();
+        assertTrue(partition.contains("MD5"));
+        assertTrue(partition.contains("\"01\""));
+        assertTrue(partition.contains("\"fd\""));
+        assertFalse(partition.contains("\"02\""));
+        assertFalse(query.toString().contains("MD5"));
+    }
+
+    @Test
+    public void testQueriesWithLimitAreNotPartitioned() {
+        assertFalse(QueryRewriter.canPartition(
+                QueryFactory.create("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 100"), "s"));
+        assertFalse(QueryRewriter.canPartition(
+                QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } OFFSET 10"), "s"));
+    }
+
+    @Test
+    public void testOrderBySubject() {
+        Query query = QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o }");
+        assertFalse(QueryRewriter.isOrderedBy(query, "s"));
+
+        Query ordered = QueryRewriter.orderBySubject(query, "s");
+        assertTrue(QueryRewriter.isOrderedBy(ordered, "s"));
+        assertFalse(query.hasOrderBy());
+
+        Query byPredicate = QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY ?p");
+        assertSame(byPredicate, QueryRewriter.orderBySubject(byPredicate, "s"));
+        assertFalse(QueryRewriter.isOrderedBy(byPredicate, "s"));
+    }
+
+    @Test
+    public void testGroupedBySubject() {
+        assertNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(
+                QueryFactory.create("CONSTRUCT { ?res ?p ?o . ?res a ?type } WHERE { ?res ?p ?o ; a ?type }"))));
+        assertNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(
+                QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY ?s ?p"))));
+
+        assertNotNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(
+                QueryFactory.create("CONSTRUCT { ?s ?p ?o . ?o ?q ?v } WHERE { ?s ?p ?o . ?o ?q ?v }"))));
+        assertNotNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(
+                QueryFactory.create("SELECT ?s ?p ?o WHERE { ?s ?p ?o } ORDER BY ?p"))));
+        assertNotNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(
+                QueryFactory.create("DESCRIBE ?s WHERE { ?s ?p ?o }"))));
+    }
+
+    @Test
+    public void testSubjectInTwoQueriesIsNotGrouped() {
+        // Both queries return triples of <http://example.org/a>
+        Query labels = QueryFactory.create("SELECT ?s ?p ?o WHERE { VALUES ?s { <http://example.org/a> } "
+                + "?s ?p ?o FILTER(?p = <http://www.w3.org/2000/01/rdf-schema#label>) }");
+        Query types = QueryFactory.create("SELECT ?s ?p ?o WHERE { VALUES ?s { <http://example.org/a> } "
+                + "?s ?p ?o FILTER(?p = <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>) }");
+        assertNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(labels)));
+        assertNotNull(QueryRewriter.checkGroupedBySubject(Arrays.asList(labels, types)));
+
+        Query union = QueryFactory.create("SELECT ?s ?p ?o WHERE { VALUES ?s { <http://example.org/a> } "
+                + "{ ?s ?p ?o FILTER(?p = <http://www.w3.org/2000/01/rdf-schema#label>) } UNION "
+                + "{ ?s ?p ?o FILTER(?p = <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>) } }");
+        assertNull(QueryRewriter.checkGroupedBySubject(Collections.singletonList(union)));
+    }
+}
@@ -0,0 +1,99 @@
+package org.elasticsearch.app.support;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResultFormatsTest {
+
+    @Test
+    public void testFormatNames() {
+        ResultFormats formats = new ResultFormats("NTriples", "application/sparql-results+json");
+        assertEquals("ntriples", formats.name(false));
+        assertEquals("json", formats.name(true));
+        assertFalse(formats.needsProbe(false));
+
+        assertEquals("default", new ResultFormats("", null).name(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() {
+        new ResultFormats("n3x", "");
+    }
+
+    @Test
+    public void testProbeChoosesFirstAccepted() {
+        ResultFormats formats = new ResultFormats("auto", "");
+        assertTrue(formats.needsProbe(false));
+
+        List<String> tried = new ArrayList<>();
+        String chosen = formats.probe(false, contentType -> {
+            tried.add(contentType);
+            if (tried.size() < 2) throw new Exception("Not acceptable");
+            return contentType + "; charset=utf-8";
+        });
+
+        assertEquals(2, tried.size());
+        assertEquals(tried.get(1), chosen);
+        assertEquals("ntriples", formats.name(false));
+        assertFalse(formats.needsProbe(false));
+    }
+
+    @Test
+    public void testProbeChecksResponseType() {
+        ResultFormats formats = new ResultFormats("auto", "");
+
+        List<String> tried = new ArrayList<>();
+        String chosen = formats.probe(false, contentType -> {
+            tried.add(contentType);
+            // An endpoint ignoring the requested type
+            return "application/rdf+xml";
+        });
+
+        assertEquals("application/rdf+xml", chosen);
+        assertEquals("rdfxml", formats.name(false));
+        assertEquals(4, tried.size());
+    }
+
+    @Test
+    public void testSameType() {
+        assertTrue(ResultFormats.isSameType("application/n-triples", "application/n-triples; charset=utf-8"));
+        assertTrue(ResultFormats.isSameType("text/turtle", "application/x-turtle"));
+        assertFalse(ResultFormats.isSameType("application/rdf+thrift", "application/rdf+xml"));
+        assertFalse(ResultFormats.isSameType("text/tab-separated-values", null));
+    }
+
+    @Test
+    public void testReadChecksResult() throws Exception {
+        ResultFormats.read(stream("<http://a> <http://b> \"c\" .\n"), "application/n-triples", false);
+        ResultFormats.read(stream("?s\n<http://a>\n"), "text/tab-separated-values", true);
+        try {
+            ResultFormats.read(stream("<rdf:RDF"), "application/n-triples", false);
+            fail();
+        } catch (Exception expected) {
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTimingsPerFormat() {
+        ResultFormats formats = new ResultFormats("turtle", "tsv");
+        formats.record(false, 10, 100);
+        formats.record(false, 30, 300);
+        formats.record(true, 5, 50);
+
+        List<String> summary = formats.summary();
+        assertEquals(2, summary.size());
+        assertTrue(summary.get(0).startsWith("turtle: 2 queries, 40 ms, 400 items"));
+        assertTrue(summary.get(1).startsWith("tsv: 1 queries, 5 ms, 50 items"));
+    }
+}
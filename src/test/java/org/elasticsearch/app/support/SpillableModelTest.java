@@ -0,0 +1,56 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class SpillableModelTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Triple triple(int subject, int value) {
+        return new Triple(
+                NodeFactory.createURI("http://example.org/s" + subject),
+                NodeFactory.createURI("http://example.org/p"),
+                NodeFactory.createLiteral("v" + value));
+    }
+
+    @Test
+    public void testStaysInMemoryBelowLimit() {
+        SpillableModel store = new SpillableModel(10, folder.getRoot());
+        for (int i = 0; i < 10; i++) {
+            store.triple(triple(i, i));
+        }
+        store.finish();
+
+        assertFalse(store.isSpilled());
+        assertEquals(10, store.getModel().size());
+        store.close();
+    }
+
+    @Test
+    public void testSpillsToDisk() {
+        SpillableModel store = new SpillableModel(3, folder.getRoot());
+        for (int i = 0; i < 10; i++) {
+            store.triple(triple(i % 4, i));
+        }
+        store.finish();
+
+        assertTrue(store.isSpilled());
+        assertEquals(10, store.getModel().size());
+        assertEquals(4, store.getModel().listSubjects().toList().size());
+        File[] stores = folder.getRoot().listFiles();
+        assertNotNull(stores);
+        assertEquals(1, stores.length);
+
+        store.close();
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+}
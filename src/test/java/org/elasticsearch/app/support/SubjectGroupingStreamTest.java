@@ -0,0 +1,106 @@
+package org.elasticsearch.app.support;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SubjectGroupingStreamTest {
+
+    private final Map<Node, List<Triple>> groups = new LinkedHashMap<>();
+    private int handed = 0;
+
+    private final SubjectGroupingStream.SubjectHandler handler = (subject, triples) -> {
+        handed++;
+        groups.computeIfAbsent(subject, s -> new ArrayList<>()).addAll(triples);
+    };
+
+    @Test
+    public void testWindowGroupsSubjects() {
+        SubjectGroupingStream stream = new SubjectGroupingStream(2, handler);
+        stream.triple(triple("a", "1"));
+        stream.triple(triple("b", "1"));
+        stream.triple(triple("a", "2"));
+        stream.triple(triple("c", "1"));
+        stream.finish();
+
+        assertEquals(3, handed);
+        assertEquals(2, groups.get(node("a")).size());
+        assertEquals(3, stream.getSubjectCount());
+        assertEquals(4, stream.getTripleCount());
+    }
+
+    @Test
+    public void testSubjectContinuedOnNextPage() {
+        SubjectGroupingStream stream = new SubjectGroupingStream(Integer.MAX_VALUE, handler);
+        stream.completeExcept(subjects("a", "b"));
+        stream.triple(triple("a", "1"));
+        stream.triple(triple("b", "1"));
+
+        // b continues on the second page, a is complete
+        stream.completeExcept(subjects("b", "c"));
+        assertEquals(1, handed);
+        stream.triple(triple("b", "2"));
+        stream.triple(triple("c", "1"));
+        stream.completeExcept(Collections.emptySet());
+
+        assertEquals(3, handed);
+        assertEquals(2, groups.get(node("b")).size());
+    }
+
+    @Test
+    public void testSubjectReceivedAgainFails() {
+        SubjectGroupingStream stream = new SubjectGroupingStream(2, handler);
+        stream.triple(triple("a", "1"));
+        stream.triple(triple("b", "1"));
+        // Pushes a out of the window
+        stream.triple(triple("c", "1"));
+        assertEquals(1, handed);
+
+        try {
+            stream.triple(triple("a", "2"));
+            fail("a was indexed again from part of its triples");
+        } catch (SubjectGroupingStream.SubjectReopenedException e) {
+            assertEquals(1, handed);
+            assertEquals(1, groups.get(node("a")).size());
+        }
+    }
+
+    @Test
+    public void testSubjectReceivedAgainOnLaterPageFails() {
+        SubjectGroupingStream stream = new SubjectGroupingStream(Integer.MAX_VALUE, handler);
+        stream.triple(triple("a", "1"));
+        stream.completeExcept(subjects("b"));
+        stream.triple(triple("b", "1"));
+
+        try {
+            stream.triple(triple("a", "2"));
+            fail("a was indexed again from part of its triples");
+        } catch (SubjectGroupingStream.SubjectReopenedException e) {
+            assertEquals(1, handed);
+        }
+    }
+
+    private static HashSet<Node> subjects(String... names) {
+        HashSet<Node> subjects = new HashSet<>();
+        for (String name : names) subjects.add(node(name));
+        return subjects;
+    }
+
+    private static Triple triple(String subject, String value) {
+        return Triple.create(node(subject), node("p"), NodeFactory.createLiteral(value));
+    }
+
+    private static Node node(String name) {
+        return NodeFactory.createURI("http://example.org/" + name);
+    }
+}